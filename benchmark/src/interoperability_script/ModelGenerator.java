@@ -0,0 +1,222 @@
+package interoperability_script;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.uml2.uml.AggregationKind;
+import org.eclipse.uml2.uml.Model;
+import org.eclipse.uml2.uml.PrimitiveType;
+import org.eclipse.uml2.uml.Profile;
+import org.eclipse.uml2.uml.Stereotype;
+import org.eclipse.uml2.uml.Type;
+import org.eclipse.uml2.uml.UMLFactory;
+import org.eclipse.uml2.uml.resource.UMLResource;
+
+
+/**
+ * Generator of synthetic interoperability models, built through the UML2 API
+ * with the stereotypes of a RootInteroperability profile defined in memory.
+ * Models are random but reproducible for a given seed, and are meant for
+ * benchmarks and scale tests of the rules, not for checking them. The shape
+ * of the models is set through the fields below before calling generate().
+ */
+
+class ModelGenerator
+{
+	private static final String PROFILE = "RootInteroperability";
+
+	protected int numActors = 20;
+	protected int numMPS = 10;
+	protected int actorsPerMPS = 2;
+	protected int numLanguages = 8;
+	// Levels of the super language hierarchy below the reference language
+	protected int languageDepth = 1;
+	// Language Translations per language
+	protected double translationDensity = 1;
+	// Fraction of the actors with an address
+	protected double addressCoverage = 1;
+	protected int numCN = 10;
+	// Length of the chains of sub Communication Needs (addressingNeed), 0 for none
+	protected int addressingNeedDepth = 0;
+	// Fraction of the actors and Message-Passing Systems that are unavailable, distort or drop messages
+	protected double failureRate = 0.05;
+
+	private final Random random;
+	private final Profile profile;
+	private int numModels = 0;
+
+	protected ModelGenerator(long seed)
+	{
+		random = new Random(seed);
+		profile = createProfile();
+	}
+
+	protected Model generate()
+	{
+		Resource resource = interoperability.createResource(URI.createURI("generated:/model" + (numModels++) + "." + UMLResource.FILE_EXTENSION));
+		Model model = UMLFactory.eINSTANCE.createModel();
+		model.setName("Generated");
+		resource.getContents().add(model);
+		model.applyProfile(profile);
+
+		// Languages, in languageDepth levels. Every language is a super language of one of the level above
+		// (the reference language for the first level)
+		org.eclipse.uml2.uml.Class reference = createClass(model, "Reference", "Reference Language");
+		List<org.eclipse.uml2.uml.Class> languages = new ArrayList<org.eclipse.uml2.uml.Class>();
+		int depth = Math.max(1, Math.min(languageDepth, numLanguages));
+		for (int i = 0; i < numLanguages; i++)
+		{
+			org.eclipse.uml2.uml.Class lang = createClass(model, "L" + i, "Language");
+			int level = i * depth / numLanguages;
+			int levelStart = (level * numLanguages + depth - 1) / depth;
+			int previousStart = ((level - 1) * numLanguages + depth - 1) / depth;
+			associate(level == 0 ? reference : languages.get(previousStart + random.nextInt(levelStart - previousStart)), lang, "superLanguage");
+			languages.add(lang);
+		}
+
+		// Actors, with their languages and address
+		List<org.eclipse.uml2.uml.Class> actors = new ArrayList<org.eclipse.uml2.uml.Class>();
+		List<org.eclipse.uml2.uml.Class> addresses = new ArrayList<org.eclipse.uml2.uml.Class>();
+		for (int i = 0; i < numActors; i++)
+		{
+			org.eclipse.uml2.uml.Class actor = createClass(model, "Actor" + i, "Actor");
+			setFlags(actor, "Actor");
+			for (int j = 0; j < 2; j++)
+			{
+				associate(actor, pick(languages), "language");
+			}
+			if (random.nextDouble() < addressCoverage)
+			{
+				org.eclipse.uml2.uml.Class address = createClass(model, "Address" + i, "Address");
+				associate(actor, address, "identifier");
+				associate(address, pick(languages), "language");
+				addresses.add(address);
+			}
+			actors.add(actor);
+		}
+		if (!addresses.isEmpty())
+		{
+			for (org.eclipse.uml2.uml.Class actor : actors)
+			{
+				associate(actor, pick(addresses), "knownAddress");
+			}
+		}
+
+		// Message-Passing Systems
+		for (int i = 0; i < numMPS; i++)
+		{
+			org.eclipse.uml2.uml.Class mps = createClass(model, "MPS" + i, "Message-Passing System");
+			setFlags(mps, "Message-Passing System");
+			mps.setValue(mps.getAppliedStereotype(PROFILE + "::Message-Passing System"), "fixed", random.nextBoolean());
+			for (int j = 0; j < actorsPerMPS; j++)
+			{
+				associate(mps, pick(actors), "actor");
+			}
+			for (int j = 0; j < 2; j++)
+			{
+				associate(mps, pick(languages), "format");
+			}
+			associate(mps, pick(languages), "addressingLanguage");
+		}
+
+		// Language Translations
+		int numTranslations = (int) Math.round(numLanguages * translationDensity);
+		for (int i = 0; i < numTranslations; i++)
+		{
+			org.eclipse.uml2.uml.Class translation = createClass(model, "LT" + i, "Language Translation");
+			translation.setValue(translation.getAppliedStereotype(PROFILE + "::Language Translation"), "correct", random.nextDouble() < 0.9);
+			associate(translation, pick(languages), "from");
+			associate(translation, pick(languages), "to");
+			associate(translation, pick(actors), "translator");
+		}
+
+		// Communication Needs. With addressingNeedDepth d, every group of d + 1 of them is a chain in which each
+		// one has the next as sub Communication Need
+		org.eclipse.uml2.uml.Class previous = null;
+		for (int i = 0; i < numCN; i++)
+		{
+			org.eclipse.uml2.uml.Class cn = createClass(model, "CN" + i, "Communication Need");
+			cn.setValue(cn.getAppliedStereotype(PROFILE + "::Communication Need"), "satisfied", false);
+			associate(cn, pick(actors), "actor");
+			associate(cn, pick(actors), "actor");
+			associate(cn, reference, "referenceLanguage");
+			if (previous != null && i % (addressingNeedDepth + 1) != 0)
+			{
+				associate(previous, cn, "addressingNeed");
+			}
+			previous = cn;
+		}
+		return model;
+	}
+
+	// RootInteroperability profile with the stereotypes and attributes read by the rules
+	private static Profile createProfile()
+	{
+		Resource resource = interoperability.createResource(URI.createURI("generated:/" + PROFILE + ".profile." + UMLResource.FILE_EXTENSION));
+		Profile profile = UMLFactory.eINSTANCE.createProfile();
+		profile.setName(PROFILE);
+		resource.getContents().add(profile);
+		Model metamodel = (Model) interoperability.load(URI.createURI(UMLResource.UML_METAMODEL_URI));
+		org.eclipse.uml2.uml.Class metaclass = (org.eclipse.uml2.uml.Class) metamodel.getOwnedType("Class");
+		PrimitiveType booleanType = (PrimitiveType) interoperability.load(URI.createURI(UMLResource.UML_PRIMITIVE_TYPES_LIBRARY_URI)).getOwnedType("Boolean");
+		profile.createMetaclassReference(metaclass);
+
+		String[] names = {"Actor", "Abstract Actor", "Message-Passing System", "Language", "Reference Language", "Language Translation", "Address", "Communication Need"};
+		for (String name : names)
+		{
+			Stereotype stereotype = profile.createOwnedStereotype(name, false);
+			stereotype.createExtension(metaclass, false);
+			if (name.equals("Actor") || name.equals("Message-Passing System"))
+			{
+				stereotype.createOwnedAttribute("isAvailable", booleanType, 1, 1);
+				stereotype.createOwnedAttribute("distortsMessage", booleanType, 1, 1);
+				stereotype.createOwnedAttribute("dropsMessage", booleanType, 1, 1);
+			}
+			if (name.equals("Message-Passing System"))
+			{
+				stereotype.createOwnedAttribute("fixed", booleanType, 1, 1);
+			}
+			if (name.equals("Language Translation"))
+			{
+				stereotype.createOwnedAttribute("correct", booleanType, 1, 1);
+			}
+			if (name.equals("Communication Need"))
+			{
+				stereotype.createOwnedAttribute("satisfied", booleanType, 1, 1);
+			}
+		}
+		profile.define();
+		return profile;
+	}
+
+	private org.eclipse.uml2.uml.Class createClass(Model model, String name, String stereotype)
+	{
+		org.eclipse.uml2.uml.Class _class = model.createOwnedClass(name, false);
+		_class.applyStereotype(profile.getOwnedStereotype(stereotype));
+		return _class;
+	}
+
+	// Healthy, except for a fraction failureRate that is unavailable, distorts or drops messages (one of them)
+	private void setFlags(org.eclipse.uml2.uml.Class _class, String stereotype)
+	{
+		Stereotype applied = _class.getAppliedStereotype(PROFILE + "::" + stereotype);
+		int failure = random.nextDouble() < failureRate ? 1 + random.nextInt(3) : 0;
+		_class.setValue(applied, "isAvailable", failure != 1);
+		_class.setValue(applied, "distortsMessage", failure == 2);
+		_class.setValue(applied, "dropsMessage", failure == 3);
+	}
+
+	// Association from source to target, whose end typed target is named role
+	private static void associate(org.eclipse.uml2.uml.Class source, Type target, String role)
+	{
+		source.createAssociation(true, AggregationKind.NONE_LITERAL, role, 0, -1, target, false, AggregationKind.NONE_LITERAL, "", 0, -1);
+	}
+
+	private org.eclipse.uml2.uml.Class pick(List<org.eclipse.uml2.uml.Class> classes)
+	{
+		return classes.get(random.nextInt(classes.size()));
+	}
+}
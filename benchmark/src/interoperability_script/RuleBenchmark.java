@@ -0,0 +1,214 @@
+package interoperability_script;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.uml2.uml.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import interoperability_script.LogSink.Category;
+import interoperability_script.LogSink.Level;
+
+
+/**
+ * JMH benchmarks of the rule methods (Rules 1 to 12, getAssociations and
+ * addressTranslatorExists) and of the evaluation of a whole model, over
+ * generated models of increasing size and mesh density. The rule methods are
+ * run on one hop of the model: the first Message-Passing System with two
+ * actors, and the first Communication Need. Output is discarded.
+ */
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RuleBenchmark
+{
+	// Number of actors; Message-Passing Systems, languages and Communication Needs grow with it
+	@Param({"20", "80", "320"})
+	public int actors;
+
+	// Actors per Message-Passing System
+	@Param({"2", "4", "8"})
+	public int density;
+
+	private Model model;
+	private org.eclipse.uml2.uml.Class cn;
+	private org.eclipse.uml2.uml.Class currActor;
+	private org.eclipse.uml2.uml.Class nextActor;
+	private org.eclipse.uml2.uml.Class mps;
+	private org.eclipse.uml2.uml.Class lang;
+	private EList<org.eclipse.uml2.uml.Class> allowedLang;
+
+	@Setup
+	public void setUp()
+	{
+		for (Category category : Category.values())
+		{
+			LogSink.setLevel(category, Level.OFF);
+		}
+		PrintWriter discard = new PrintWriter(new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+			}
+		});
+		interoperability.openLog(discard, discard, false);
+
+		ModelGenerator generator = new ModelGenerator(actors * 31 + density);
+		generator.numActors = actors;
+		generator.numMPS = actors / 2;
+		generator.actorsPerMPS = density;
+		generator.numLanguages = actors / 4 + 2;
+		generator.numCN = actors / 2;
+		model = generator.generate();
+		interoperability.setModel(model);
+		CompiledModel compiled = interoperability.getCompiledModel();
+		cn = compiled.index.getClasses("RootInteroperability::Communication Need").get(0);
+		for (int id = 0; id < compiled.nodes.length && mps == null; id++)
+		{
+			int[] mpsActors = compiled.actorsOfMPS[id];
+			if (mpsActors.length >= 2 && mpsActors[0] != mpsActors[1])
+			{
+				mps = compiled.nodes[id];
+				currActor = compiled.nodes[mpsActors[0]];
+				nextActor = compiled.nodes[mpsActors[1]];
+			}
+		}
+		if (mps == null)
+		{
+			throw new IllegalStateException("No Message-Passing System with two actors");
+		}
+		allowedLang = interoperability.getNeighbors(currActor, "RootInteroperability::Language", null, null);
+		lang = allowedLang.get(0);
+	}
+
+	@TearDown
+	public void tearDown()
+	{
+		interoperability.closeLog();
+	}
+
+	@Benchmark
+	public boolean rule01CommunicationNeedSatisfied()
+	{
+		return interoperability.communicationNeedSatisfied(cn);
+	}
+
+	@Benchmark
+	public boolean rule02IsSatisfied()
+	{
+		return interoperability.isSatisfied(cn, currActor, nextActor, new BasicEList<org.eclipse.uml2.uml.Class>(), allowedLang);
+	}
+
+	@Benchmark
+	public boolean rule03ConditionsForSatisfaction()
+	{
+		return interoperability.conditionsForSatisfaction(cn, currActor, nextActor, mps);
+	}
+
+	@Benchmark
+	public boolean rule04ActorsAreAvailable()
+	{
+		return interoperability.actorsAreAvailable(currActor, nextActor, mps);
+	}
+
+	@Benchmark
+	public boolean rule05NoDistortedMessage()
+	{
+		return interoperability.noDistortedMessage(currActor, nextActor, mps);
+	}
+
+	@Benchmark
+	public boolean rule06NoDroppedMessage()
+	{
+		return interoperability.noDroppedMessage(currActor, nextActor, mps);
+	}
+
+	@Benchmark
+	public EList<org.eclipse.uml2.uml.Class> rule08GetAllowedLanguages()
+	{
+		return interoperability.getAllowedLanguages(cn, currActor, nextActor, mps, allowedLang);
+	}
+
+	@Benchmark
+	public EList<org.eclipse.uml2.uml.Class> rule09CommonLanguages()
+	{
+		return interoperability.commonLanguages(cn, currActor, nextActor, mps, allowedLang);
+	}
+
+	@Benchmark
+	public EList<org.eclipse.uml2.uml.Class> rule10TranslatedLanguages()
+	{
+		return interoperability.translatedLanguages(cn, currActor, nextActor, mps, allowedLang);
+	}
+
+	@Benchmark
+	public boolean rule11CompatibleWithMPS()
+	{
+		return interoperability.compatibleWithMPS(lang, mps);
+	}
+
+	@Benchmark
+	public EList<org.eclipse.uml2.uml.Class> rule12GetSuperLanguage()
+	{
+		return interoperability.getSuperLanguage(lang, new BasicEList<org.eclipse.uml2.uml.Class>());
+	}
+
+	@Benchmark
+	public EList<org.eclipse.uml2.uml.Class> getAssociations()
+	{
+		return interoperability.getAssociations(currActor, "RootInteroperability::Language", null, null);
+	}
+
+	@Benchmark
+	public boolean addressTranslatorExists()
+	{
+		return interoperability.addressTranslatorExists(currActor, nextActor, mps, new BasicEList<org.eclipse.uml2.uml.Class>());
+	}
+
+	@Benchmark
+	public void parsePackagesInteroperability()
+	{
+		interoperability.parsePackagesInteroperability(model);
+	}
+
+	// Runs every benchmark with the GC profiler, for allocation rates. Arguments, if any, are JMH include patterns
+	public static void main(String[] args) throws RunnerException
+	{
+		OptionsBuilder options = new OptionsBuilder();
+		if (args.length == 0)
+		{
+			options.include(RuleBenchmark.class.getSimpleName());
+		}
+		for (String pattern : args)
+		{
+			options.include(pattern);
+		}
+		Options built = options.addProfiler(GCProfiler.class).build();
+		new Runner(built).run();
+	}
+}
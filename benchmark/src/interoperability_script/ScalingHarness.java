@@ -0,0 +1,210 @@
+package interoperability_script;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.uml2.uml.Model;
+
+import interoperability_script.LogSink.Category;
+import interoperability_script.LogSink.Level;
+
+
+/**
+ * End-to-end scaling harness. Starting from a baseline model, every
+ * dimension of ModelGenerator is grown in turn, the others keeping their
+ * baseline value, and the wall time and peak heap of the evaluation of each
+ * generated model (parsePackagesInteroperability) are written to
+ * scaling.txt. A dimension stops growing once an evaluation takes longer than
+ * the time limit.
+ */
+
+public class ScalingHarness
+{
+	private static final String[] DIMENSIONS = {"actors", "mps", "actorsPerMPS", "languageDepth", "translationDensity", "addressCoverage", "addressingNeedDepth", "failureRate"};
+	private static final double[][] VALUES = {
+		{25, 50, 100, 200, 400, 800, 1600},
+		{12, 25, 50, 100, 200, 400, 800},
+		{2, 3, 4, 8, 16, 32},
+		{1, 2, 4, 8, 12},
+		{0.5, 1, 2, 4, 8},
+		{0, 0.25, 0.5, 0.75, 1},
+		{0, 1, 2, 4, 8},
+		{0, 0.1, 0.2, 0.4}};
+
+	/**
+	 * Expects the directory in which to write scaling.txt and, optionally, the
+	 * time limit in seconds (default 60).
+	 */
+	public static void main(String[] args)
+
+	throws IOException
+	{
+		File directory = new File(args.length > 0 ? args[0] : ".");
+		long limit = (args.length > 1 ? Long.parseLong(args[1]) : 60) * 1000;
+
+		for (Category category : Category.values())
+		{
+			LogSink.setLevel(category, Level.OFF);
+		}
+		PrintWriter discard = new PrintWriter(new OutputStream()
+		{
+			@Override
+			public void write(int b) throws IOException
+			{
+			}
+		});
+		interoperability.openLog(discard, discard, false);
+
+		PrintWriter results = new PrintWriter(new File(directory, "scaling.txt"), "UTF-8");
+		results.printf("Dimension\tValue\tElements\tTime (ms)\tPeak heap (MB)");
+		results.println();
+		try
+		{
+			// Warm up on the baseline model
+			ModelGenerator generator = new ModelGenerator(0);
+			set(generator, null, 0);
+			run(generator);
+			for (int d = 0; d < DIMENSIONS.length; d++)
+			{
+				for (double value : VALUES[d])
+				{
+					set(generator, DIMENSIONS[d], value);
+					long[] measures = run(generator);
+					results.printf("%s\t%s\t%d\t%d\t%d", DIMENSIONS[d], value, measures[0], measures[1], measures[2] >> 20);
+					results.println();
+					results.flush();
+					System.out.printf("%s = %s: %d ms, %d MB%n", DIMENSIONS[d], value, measures[1], measures[2] >> 20);
+					if (measures[1] > limit)
+					{
+						break;
+					}
+				}
+			}
+		}
+		finally
+		{
+			results.close();
+			interoperability.closeLog();
+		}
+	}
+
+	// Baseline model, with one dimension (if any) changed
+	private static void set(ModelGenerator generator, String dimension, double value)
+	{
+		generator.numActors = 50;
+		generator.numMPS = 25;
+		generator.actorsPerMPS = 3;
+		generator.numLanguages = 12;
+		generator.languageDepth = 2;
+		generator.translationDensity = 1;
+		generator.addressCoverage = 0.8;
+		generator.numCN = 20;
+		generator.addressingNeedDepth = 0;
+		generator.failureRate = 0.05;
+		switch (dimension != null ? dimension : "")
+		{
+		case "actors":
+			generator.numActors = (int) value;
+			break;
+		case "mps":
+			generator.numMPS = (int) value;
+			break;
+		case "actorsPerMPS":
+			generator.actorsPerMPS = (int) value;
+			break;
+		case "languageDepth":
+			generator.languageDepth = (int) value;
+			break;
+		case "translationDensity":
+			generator.translationDensity = value;
+			break;
+		case "addressCoverage":
+			generator.addressCoverage = value;
+			break;
+		case "addressingNeedDepth":
+			generator.addressingNeedDepth = (int) value;
+			break;
+		case "failureRate":
+			generator.failureRate = value;
+			break;
+		}
+	}
+
+	// Generates and evaluates a model: number of elements, wall time (ms) and peak heap (bytes) of the evaluation
+	private static long[] run(ModelGenerator generator)
+	{
+		Model model = generator.generate();
+		interoperability.setModel(model);
+		System.gc();
+		HeapSampler sampler = new HeapSampler();
+		sampler.start();
+		long start = System.nanoTime();
+		interoperability.parsePackagesInteroperability(model);
+		long time = (System.nanoTime() - start) / 1000000;
+		long peak = sampler.finish();
+		long elements = model.getOwnedTypes().size();
+
+		// Unload the model
+		Resource resource = model.eResource();
+		resource.unload();
+		resource.getResourceSet().getResources().remove(resource);
+		return new long[] {elements, time, peak};
+	}
+
+	// Samples the used heap every millisecond until finished, keeping the largest sample. The peaks of the
+	// heap pools cannot be summed instead, as they are not reached at the same time
+	private static class HeapSampler extends Thread
+	{
+		private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		private volatile boolean finished = false;
+		private long peak = 0;
+
+		private HeapSampler()
+		{
+			setDaemon(true);
+		}
+
+		@Override
+		public void run()
+		{
+			while (!finished)
+			{
+				sample();
+				try
+				{
+					Thread.sleep(1);
+				}
+				catch (InterruptedException ie)
+				{
+					return;
+				}
+			}
+		}
+
+		private void sample()
+		{
+			peak = Math.max(peak, memory.getHeapMemoryUsage().getUsed());
+		}
+
+		// Stops sampling, and returns the peak heap (bytes)
+		private long finish()
+		{
+			finished = true;
+			try
+			{
+				join();
+			}
+			catch (InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+			sample();
+			return peak;
+		}
+	}
+}
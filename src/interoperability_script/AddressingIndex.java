@@ -0,0 +1,224 @@
+package interoperability_script;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.emf.common.util.EList;
+
+
+/**
+ * Addressing index of a compiled model, for Rules 16 to 18. Addresses get
+ * dense ids, and each actor holds the bitsets of its own (identifier) and
+ * known addresses and of their languages, so that no address list is
+ * rebuilt on a hop. Which actors of a Message-Passing System can address each
+ * other, directly or through translator actors of the Message-Passing System
+ * (Rule 18), is computed once per Message-Passing System as a closure over
+ * its actors, and does not depend on the path being searched.
+ */
+
+class AddressingIndex
+{
+	private final CompiledModel model;
+
+	// Languages of each address, by address id
+	private final BitSet[] addressLanguages;
+	// Own and known addresses of each actor, and the languages of these addresses, by node id
+	private final BitSet[] ownAddresses;
+	private final BitSet[] knownAddresses;
+	private final BitSet[] ownAddressLanguages;
+	private final BitSet[] knownAddressLanguages;
+	// Addressing languages of each Message-Passing System, by node id
+	private final BitSet[] addressingLanguages;
+	// Actors of each Message-Passing System, whether they fail Rules 4 to 6 or not, by node id
+	private final int[][] actorsOfMPS;
+
+	// Addressable pairs of the actors of each Message-Passing System, by node id, computed when first needed
+	private final Map<Integer, boolean[][]> addressable = new ConcurrentHashMap<Integer, boolean[][]>();
+
+	protected AddressingIndex(CompiledModel model)
+	{
+		this.model = model;
+		ModelIndex index = model.index;
+
+		Map<org.eclipse.uml2.uml.Class, Integer> addressIds = new HashMap<org.eclipse.uml2.uml.Class, Integer>();
+		EList<org.eclipse.uml2.uml.Class> addresses = index.getClasses("RootInteroperability::Address");
+		for (org.eclipse.uml2.uml.Class address : addresses)
+		{
+			addressIds.put(address, addressIds.size());
+		}
+		addressLanguages = new BitSet[addressIds.size()];
+		for (org.eclipse.uml2.uml.Class address : addresses)
+		{
+			addressLanguages[addressIds.get(address)] = languageSet(index.get(address, "RootInteroperability::Language", null, null));
+		}
+
+		int numNodes = model.nodes.length;
+		ownAddresses = new BitSet[numNodes];
+		knownAddresses = new BitSet[numNodes];
+		ownAddressLanguages = new BitSet[numNodes];
+		knownAddressLanguages = new BitSet[numNodes];
+		addressingLanguages = new BitSet[numNodes];
+		actorsOfMPS = new int[numNodes][];
+		for (int id = 0; id < numNodes; id++)
+		{
+			org.eclipse.uml2.uml.Class node = model.nodes[id];
+			ownAddresses[id] = addressSet(addressIds, index.get(node, "RootInteroperability::Address", null, "identifier"));
+			knownAddresses[id] = addressSet(addressIds, index.get(node, "RootInteroperability::Address", null, "knownAddress"));
+			ownAddressLanguages[id] = addressLanguageSet(ownAddresses[id]);
+			knownAddressLanguages[id] = addressLanguageSet(knownAddresses[id]);
+			addressingLanguages[id] = languageSet(index.get(node, "RootInteroperability::Language", null, "addressingLanguage"));
+			Set<Integer> actors = new LinkedHashSet<Integer>();
+			for (org.eclipse.uml2.uml.Class actor : index.get(node, "RootInteroperability::Actor", null, null))
+			{
+				int actorId = model.getNodeId(actor);
+				if (actorId >= 0)
+				{
+					actors.add(actorId);
+				}
+			}
+			actorsOfMPS[id] = new int[actors.size()];
+			int i = 0;
+			for (int actor : actors)
+			{
+				actorsOfMPS[id][i++] = actor;
+			}
+		}
+	}
+
+	// Rule 16 by node ids: whether currActor and nextActor can address each other on the Message-Passing System
+	protected boolean addressable(int currActor, int nextActor, int mps)
+	{
+		int[] actors = actorsOfMPS[mps];
+		int curr = position(actors, currActor);
+		int next = position(actors, nextActor);
+		if (curr >= 0 && next >= 0)
+		{
+			boolean[][] pairs = addressable.get(mps);
+			if (pairs == null)
+			{
+				pairs = closure(mps, actors, actors.length);
+				addressable.put(mps, pairs);
+			}
+			return pairs[curr][next];
+		}
+
+		// Actors that are not on the Message-Passing System, with its actors as the only translators
+		int[] all = new int[actors.length + 2];
+		System.arraycopy(actors, 0, all, 0, actors.length);
+		all[actors.length] = currActor;
+		all[actors.length + 1] = nextActor;
+		return closure(mps, all, actors.length)[actors.length][actors.length + 1];
+	}
+
+	// Addressable pairs of the given actors: pairs sharing an address valid on the Message-Passing System
+	// (Rule 17), then pairs sharing an address and joined by a translator (Rule 18), one of the first
+	// numTranslators actors that is addressable from the first actor and can address the second one
+	private boolean[][] closure(int mps, int[] actors, int numTranslators)
+	{
+		int n = actors.length;
+		boolean[][] shared = new boolean[n][n];
+		boolean[][] pairs = new boolean[n][n];
+		for (int i = 0; i < n; i++)
+		{
+			for (int j = 0; j < n; j++)
+			{
+				BitSet addresses = common(knownAddresses[actors[i]], ownAddresses[actors[j]]);
+				addresses.or(common(knownAddresses[actors[j]], ownAddresses[actors[i]]));
+				shared[i][j] = !addresses.isEmpty();
+				for (int address = addresses.nextSetBit(0); address >= 0 && !pairs[i][j]; address = addresses.nextSetBit(address + 1))
+				{
+					pairs[i][j] = addressLanguages[address].intersects(addressingLanguages[mps]);
+				}
+			}
+		}
+
+		boolean changed = true;
+		while (changed)
+		{
+			changed = false;
+			for (int i = 0; i < n; i++)
+			{
+				for (int j = 0; j < n; j++)
+				{
+					if (pairs[i][j] || !shared[i][j])
+					{
+						continue;
+					}
+					// Languages a translator must speak: own address languages of one actor known to the other
+					BitSet translated = common(ownAddressLanguages[actors[i]], knownAddressLanguages[actors[j]]);
+					translated.or(common(ownAddressLanguages[actors[j]], knownAddressLanguages[actors[i]]));
+					for (int t = 0; t < numTranslators && !pairs[i][j]; t++)
+					{
+						if (actors[t] != actors[i] && actors[t] != actors[j] && pairs[i][t] && pairs[t][j] && model.actorLanguageSet[actors[t]].intersects(translated))
+						{
+							pairs[i][j] = true;
+							changed = true;
+						}
+					}
+				}
+			}
+		}
+		return pairs;
+	}
+
+	private static BitSet common(BitSet a, BitSet b)
+	{
+		BitSet result = (BitSet) a.clone();
+		result.and(b);
+		return result;
+	}
+
+	private static int position(int[] actors, int actor)
+	{
+		for (int i = 0; i < actors.length; i++)
+		{
+			if (actors[i] == actor)
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private BitSet languageSet(EList<org.eclipse.uml2.uml.Class> languages)
+	{
+		BitSet set = new BitSet();
+		for (org.eclipse.uml2.uml.Class lang : languages)
+		{
+			int id = model.index.getLanguageId(lang);
+			if (id >= 0)
+			{
+				set.set(id);
+			}
+		}
+		return set;
+	}
+
+	private static BitSet addressSet(Map<org.eclipse.uml2.uml.Class, Integer> addressIds, EList<org.eclipse.uml2.uml.Class> addresses)
+	{
+		BitSet set = new BitSet();
+		for (org.eclipse.uml2.uml.Class address : addresses)
+		{
+			Integer id = addressIds.get(address);
+			if (id != null)
+			{
+				set.set(id);
+			}
+		}
+		return set;
+	}
+
+	private BitSet addressLanguageSet(BitSet addresses)
+	{
+		BitSet set = new BitSet();
+		for (int address = addresses.nextSetBit(0); address >= 0; address = addresses.nextSetBit(address + 1))
+		{
+			set.or(addressLanguages[address]);
+		}
+		return set;
+	}
+}
@@ -0,0 +1,273 @@
+package interoperability_script;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+
+
+/**
+ * Compiled form of the interoperability graph used by the path search of
+ * Rule 2. Actors and Message-Passing Systems share one dense node id space
+ * and languages use the dense ids of the ModelIndex, so that the search runs
+ * on int arrays and bitsets only. Adjacency lists keep the order (and any
+ * duplicates) of getAssociations(), so the search explores paths in exactly
+ * the same order as before. The stereotype attributes of Rules 4, 5, 6, 10
+ * and 15 are read once into flags, and actors and Message-Passing Systems
+ * that fail Rules 4 to 6 are left out of the adjacency lists, since no hop
+ * through them can satisfy Rule 3. The connected components of these lists
+ * are computed once with a union-find, so that actors no path can join are
+ * told apart without a search.
+ */
+
+class CompiledModel
+{
+	// Flags of actors and Message-Passing Systems
+	protected static final int AVAILABLE = 1;
+	protected static final int DISTORTS_MESSAGE = 1 << 1;
+	protected static final int DROPS_MESSAGE = 1 << 2;
+	protected static final int FIXED = 1 << 3;
+
+	protected final ModelIndex index;
+
+	// Actors and Message-Passing Systems, by node id
+	protected final org.eclipse.uml2.uml.Class[] nodes;
+	private final Map<org.eclipse.uml2.uml.Class, Integer> nodeIds = new HashMap<org.eclipse.uml2.uml.Class, Integer>();
+
+	// Flags of each actor and Message-Passing System, by node id
+	protected final int[] flags;
+
+	// Message-Passing Systems of each actor and actors of each Message-Passing System, by node id.
+	// Elements failing Rules 4 to 6 have none and are in none
+	protected final int[][] mpsOfActor;
+	protected final int[][] actorsOfMPS;
+
+	// Languages of each actor (list and set of language ids), by node id
+	protected final int[][] actorLanguages;
+	protected final BitSet[] actorLanguageSet;
+
+	// Languages compatible with each Message-Passing System (Rule 11), by node id
+	protected final BitSet[] compatibleLanguages;
+
+	// Language Translations: the translations starting at each language id, and per translation its
+	// class, translator actors (node ids) and languages (language ids)
+	protected final int[][] translationsOf;
+	protected final org.eclipse.uml2.uml.Class[] translations;
+	protected final int[][] translators;
+	protected final int[][] translationLanguages;
+	protected final boolean[] correct;
+	private final Map<org.eclipse.uml2.uml.Class, Integer> translationIds = new HashMap<org.eclipse.uml2.uml.Class, Integer>();
+
+	// Addresses and addressable actors (Rules 16 to 18)
+	protected final AddressingIndex addressing;
+
+	// Connected component of each node over mpsOfActor and actorsOfMPS, as the smallest node id in it
+	private final int[] component;
+	// Actors of each component, computed when first needed
+	private final Map<Integer, BitSet> componentActors = new ConcurrentHashMap<Integer, BitSet>();
+
+	protected CompiledModel(ModelIndex index)
+	{
+		this.index = index;
+
+		EList<org.eclipse.uml2.uml.Class> nodeList = new BasicEList<org.eclipse.uml2.uml.Class>();
+		nodeList.addAll(index.getClasses("RootInteroperability::Actor"));
+		nodeList.addAll(index.getClasses("RootInteroperability::Message-Passing System"));
+		for (org.eclipse.uml2.uml.Class node : nodeList)
+		{
+			if (!nodeIds.containsKey(node))
+			{
+				nodeIds.put(node, nodeIds.size());
+			}
+		}
+		nodes = new org.eclipse.uml2.uml.Class[nodeIds.size()];
+		for (Map.Entry<org.eclipse.uml2.uml.Class, Integer> entry : nodeIds.entrySet())
+		{
+			nodes[entry.getValue()] = entry.getKey();
+		}
+
+		flags = new int[nodes.length];
+		for (int id = 0; id < nodes.length; id++)
+		{
+			String stereotype = index.hasStereotype(nodes[id], "RootInteroperability::Actor") ? "RootInteroperability::Actor" : "RootInteroperability::Message-Passing System";
+			flags[id] = flag(nodes[id], stereotype, "isAvailable", AVAILABLE) | flag(nodes[id], stereotype, "distortsMessage", DISTORTS_MESSAGE) | flag(nodes[id], stereotype, "dropsMessage", DROPS_MESSAGE);
+			if (stereotype.equals("RootInteroperability::Message-Passing System"))
+			{
+				flags[id] |= flag(nodes[id], stereotype, "fixed", FIXED);
+			}
+		}
+
+		int numLanguages = index.getLanguageCount();
+		mpsOfActor = new int[nodes.length][];
+		actorsOfMPS = new int[nodes.length][];
+		actorLanguages = new int[nodes.length][];
+		actorLanguageSet = new BitSet[nodes.length];
+		compatibleLanguages = new BitSet[nodes.length];
+		for (int id = 0; id < nodes.length; id++)
+		{
+			mpsOfActor[id] = isHealthy(id) ? healthyNodeIds(index.get(nodes[id], "RootInteroperability::Message-Passing System", null, null)) : new int[0];
+			actorsOfMPS[id] = isHealthy(id) ? healthyNodeIds(index.get(nodes[id], "RootInteroperability::Actor", null, null)) : new int[0];
+			actorLanguages[id] = languageIds(index.get(nodes[id], "RootInteroperability::Language", null, null));
+			actorLanguageSet[id] = new BitSet(numLanguages);
+			for (int lang : actorLanguages[id])
+			{
+				actorLanguageSet[id].set(lang);
+			}
+			compatibleLanguages[id] = new BitSet(numLanguages);
+			BitSet formats = index.getFormats(nodes[id]);
+			if (formats != null)
+			{
+				for (int lang = 0; lang < numLanguages; lang++)
+				{
+					if (index.getCarryingLanguages(lang).intersects(formats))
+					{
+						compatibleLanguages[id].set(lang);
+					}
+				}
+			}
+		}
+
+		EList<org.eclipse.uml2.uml.Class> translationList = index.getClasses("RootInteroperability::Language Translation");
+		translations = translationList.toArray(new org.eclipse.uml2.uml.Class[translationList.size()]);
+		translators = new int[translations.length][];
+		translationLanguages = new int[translations.length][];
+		correct = new boolean[translations.length];
+		for (int id = 0; id < translations.length; id++)
+		{
+			translationIds.put(translations[id], id);
+			correct[id] = (boolean) interoperability.getStereotypeValue(translations[id], "RootInteroperability::Language Translation", "correct");
+			translators[id] = nodeIds(index.get(translations[id], "RootInteroperability::Actor", null, null));
+			translationLanguages[id] = languageIds(index.get(translations[id], "RootInteroperability::Language", null, null));
+		}
+		translationsOf = new int[numLanguages][];
+		for (int lang = 0; lang < numLanguages; lang++)
+		{
+			EList<org.eclipse.uml2.uml.Class> langTranslation = index.get(index.getLanguage(lang), "RootInteroperability::Language Translation", null, null);
+			translationsOf[lang] = new int[langTranslation.size()];
+			for (int i = 0; i < langTranslation.size(); i++)
+			{
+				translationsOf[lang][i] = translationIds.get(langTranslation.get(i));
+			}
+		}
+
+		addressing = new AddressingIndex(this);
+
+		component = new int[nodes.length];
+		for (int id = 0; id < nodes.length; id++)
+		{
+			component[id] = id;
+		}
+		for (int id = 0; id < nodes.length; id++)
+		{
+			for (int mps : mpsOfActor[id])
+			{
+				int root = find(id);
+				int mpsRoot = find(mps);
+				component[Math.max(root, mpsRoot)] = Math.min(root, mpsRoot);
+			}
+		}
+		for (int id = 0; id < nodes.length; id++)
+		{
+			component[id] = find(id);
+		}
+	}
+
+	private int find(int id)
+	{
+		while (component[id] != id)
+		{
+			component[id] = component[component[id]];
+			id = component[id];
+		}
+		return id;
+	}
+
+	// Whether a path of Rule 2 may join the two nodes: they are in the same connected component of the
+	// actors and Message-Passing Systems that satisfy Rules 4 to 6
+	protected boolean connected(int node, int otherNode)
+	{
+		return component[node] == component[otherNode];
+	}
+
+	// Actors of the connected component of a node, the ones a path search from it may expand
+	protected BitSet getComponentActors(int id)
+	{
+		BitSet actors = componentActors.get(component[id]);
+		if (actors == null)
+		{
+			actors = new BitSet(nodes.length);
+			for (int node = 0; node < nodes.length; node++)
+			{
+				if (component[node] == component[id] && index.hasStereotype(nodes[node], "RootInteroperability::Actor"))
+				{
+					actors.set(node);
+				}
+			}
+			componentActors.put(component[id], actors);
+		}
+		return actors;
+	}
+
+	// Node id of an actor or Message-Passing System, or -1
+	protected int getNodeId(org.eclipse.uml2.uml.Class _class)
+	{
+		Integer id = nodeIds.get(_class);
+		return id == null ? -1 : id;
+	}
+
+	// Translation id of a Language Translation, or -1
+	protected int getTranslationId(org.eclipse.uml2.uml.Class _class)
+	{
+		Integer id = translationIds.get(_class);
+		return id == null ? -1 : id;
+	}
+
+	// Whether the actor or Message-Passing System is available and neither distorts nor drops messages (Rules 4 to 6)
+	protected boolean isHealthy(int id)
+	{
+		return (flags[id] & (AVAILABLE | DISTORTS_MESSAGE | DROPS_MESSAGE)) == AVAILABLE;
+	}
+
+	private static int flag(org.eclipse.uml2.uml.Class _class, String stereotype, String property, int flag)
+	{
+		return (boolean) interoperability.getStereotypeValue(_class, stereotype, property) ? flag : 0;
+	}
+
+	private int[] healthyNodeIds(EList<org.eclipse.uml2.uml.Class> classesList)
+	{
+		int[] ids = nodeIds(classesList);
+		int size = 0;
+		for (int id : ids)
+		{
+			if (isHealthy(id))
+			{
+				ids[size++] = id;
+			}
+		}
+		return Arrays.copyOf(ids, size);
+	}
+
+	private int[] nodeIds(EList<org.eclipse.uml2.uml.Class> classesList)
+	{
+		int[] ids = new int[classesList == null ? 0 : classesList.size()];
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = nodeIds.get(classesList.get(i));
+		}
+		return ids;
+	}
+
+	private int[] languageIds(EList<org.eclipse.uml2.uml.Class> classesList)
+	{
+		int[] ids = new int[classesList == null ? 0 : classesList.size()];
+		for (int i = 0; i < ids.length; i++)
+		{
+			ids[i] = index.getLanguageId(classesList.get(i));
+		}
+		return ids;
+	}
+}
@@ -0,0 +1,152 @@
+package interoperability_script;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.graphstream.graph.Edge;
+import org.graphstream.graph.Node;
+import org.graphstream.graph.implementations.MultiGraph;
+import org.graphstream.stream.file.FileSink;
+import org.graphstream.stream.file.FileSinkDGS;
+import org.graphstream.stream.file.FileSinkDOT;
+import org.graphstream.stream.file.FileSinkGraphML;
+import org.graphstream.ui.view.Viewer;
+
+
+/**
+ * Interoperability graph of the satisfied Communication Needs: the actors and
+ * Message-Passing Systems of their paths, and the edges of every hop labelled
+ * with the number of the Communication Need. Nodes and edges are kept in
+ * plain maps, in the order they were added, while the Communication Needs
+ * are evaluated. A GraphStream graph is only built afterwards, to export the
+ * graph to a file or to display it.
+ */
+
+class InteroperabilityGraph
+{
+	protected static final String[] FORMATS = {"dot", "graphml", "dgs"};
+
+	protected static class GraphNode
+	{
+		protected final String id;
+		protected final String label;
+		protected final String uiClass;
+
+		private GraphNode(String id, String label, String uiClass)
+		{
+			this.id = id;
+			this.label = label;
+			this.uiClass = uiClass;
+		}
+	}
+
+	protected static class GraphEdge
+	{
+		protected final String id;
+		protected final String source;
+		protected final String target;
+		protected final String label;
+
+		private GraphEdge(String id, String source, String target, String label)
+		{
+			this.id = id;
+			this.source = source;
+			this.target = target;
+			this.label = label;
+		}
+	}
+
+	private final String name;
+	private final Map<String, GraphNode> nodes = new LinkedHashMap<String, GraphNode>();
+	private final Map<String, GraphEdge> edges = new LinkedHashMap<String, GraphEdge>();
+
+	protected InteroperabilityGraph(String name)
+	{
+		this.name = name;
+	}
+
+	// Adds the node unless there already is one with this id
+	protected void addNode(String id, String label, String uiClass)
+	{
+		if (!nodes.containsKey(id))
+		{
+			nodes.put(id, new GraphNode(id, label, uiClass));
+		}
+	}
+
+	// Adds the edge unless there already is one with this id
+	protected void addEdge(String id, String source, String target, String label)
+	{
+		if (!edges.containsKey(id))
+		{
+			edges.put(id, new GraphEdge(id, source, target, label));
+		}
+	}
+
+	protected Collection<GraphNode> getNodes()
+	{
+		return nodes.values();
+	}
+
+	protected Collection<GraphEdge> getEdges()
+	{
+		return edges.values();
+	}
+
+	// GraphStream graph with the nodes and edges
+	protected MultiGraph toGraphStream()
+	{
+		MultiGraph graph = new MultiGraph(name);
+		for (GraphNode graphNode : nodes.values())
+		{
+			Node node = graph.addNode(graphNode.id);
+			node.addAttribute("ui.label", graphNode.label);
+			node.addAttribute("ui.class", graphNode.uiClass);
+		}
+		for (GraphEdge graphEdge : edges.values())
+		{
+			Edge edge = graph.addEdge(graphEdge.id, graphEdge.source, graphEdge.target);
+			edge.addAttribute("ui.label", graphEdge.label);
+		}
+		return graph;
+	}
+
+	// Displays the graph in high quality, styled with the given stylesheet (or none)
+	protected Viewer display(File stylesheet)
+	{
+		MultiGraph graph = toGraphStream();
+		graph.addAttribute("ui.quality");
+		graph.addAttribute("ui.antialias");
+		if (stylesheet != null)
+		{
+			graph.addAttribute("ui.stylesheet", String.format("url('%s')", stylesheet.toURI()));
+		}
+		return graph.display();
+	}
+
+	// Writes the graph to file in one of FORMATS
+	protected void export(String format, File file) throws IOException
+	{
+		FileSink sink;
+		if (format.equals("dot"))
+		{
+			sink = new FileSinkDOT(false);
+		}
+		else if (format.equals("graphml"))
+		{
+			sink = new FileSinkGraphML();
+		}
+		else if (format.equals("dgs"))
+		{
+			sink = new FileSinkDGS();
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unknown graph format: " + format);
+		}
+		toGraphStream().write(sink, file.getPath());
+	}
+}
@@ -0,0 +1,199 @@
+package interoperability_script;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+
+/**
+ * Asynchronous sink of the program output. Messages are filtered by category
+ * and level when they are logged, so that disabled categories cost nothing.
+ * Enabled messages are queued unformatted in a bounded queue, and a
+ * background thread formats them and writes them to the log text file, and
+ * to the console unless it is off, in order. Logging only waits when the
+ * queue is full.
+ */
+
+class LogSink
+{
+	protected enum Category
+	{
+		GENERAL, MULTIPLICITY, PATH, DIAGNOSIS, STATISTICS
+	}
+
+	protected enum Level
+	{
+		OFF, ERROR, INFO
+	}
+
+	private static final Level[] levels = new Level[Category.values().length];
+
+	static
+	{
+		for (Category category : Category.values())
+		{
+			levels[category.ordinal()] = Level.INFO;
+		}
+	}
+
+	// Message, formatted when it is written
+	protected static class Message
+	{
+		private final Level level;
+		private final String format;
+		private final Object[] args;
+
+		protected Message(Level level, String format, Object[] args)
+		{
+			this.level = level;
+			this.format = format;
+			this.args = args;
+		}
+
+		// Text of the message as written: formatted, followed by a new line unless the format ends with %n
+		protected String getText()
+		{
+			String text = String.format(format, args);
+			if (!format.endsWith("%n"))
+			{
+				text = text + System.lineSeparator();
+			}
+			return text;
+		}
+
+		// Text of the message without the new line that ends it
+		protected String getLine()
+		{
+			String text = getText();
+			return text.substring(0, text.length() - System.lineSeparator().length());
+		}
+
+		// Writes the text of the message to the console (standard error for errors) if console and to writer
+		// if there is one
+		protected void writeTo(boolean console, PrintWriter writer)
+		{
+			String text = getText();
+			if (console)
+			{
+				PrintStream stream = level == Level.ERROR ? System.err : System.out;
+				stream.print(text);
+			}
+			if (writer != null)
+			{
+				writer.print(text);
+			}
+		}
+	}
+
+	private static final Message END = new Message(Level.OFF, "", new Object[0]);
+
+	private final PrintWriter writer;
+	private final boolean console;
+	private final BlockingQueue<Message> queue;
+	private final Thread thread;
+	private boolean closed = false;
+
+	protected LogSink(PrintWriter writer, int capacity)
+	{
+		this(writer, capacity, true);
+	}
+
+	protected LogSink(PrintWriter writer, int capacity, boolean console)
+	{
+		this.writer = writer;
+		this.console = console;
+		this.queue = new ArrayBlockingQueue<Message>(capacity);
+		this.thread = new Thread(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				drain();
+			}
+		}, "LogSink");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	protected static void setLevel(Category category, Level level)
+	{
+		levels[category.ordinal()] = level;
+	}
+
+	// Whether messages of the category and level are written
+	protected static boolean isEnabled(Category category, Level level)
+	{
+		return level != Level.OFF && levels[category.ordinal()].compareTo(level) >= 0;
+	}
+
+	protected void add(Message message)
+	{
+		try
+		{
+			queue.put(message);
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// Writes the messages queued so far and stops the background thread
+	protected synchronized void close()
+	{
+		if (closed)
+		{
+			return;
+		}
+		closed = true;
+		add(END);
+		try
+		{
+			thread.join();
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		System.out.flush();
+		System.err.flush();
+		writer.flush();
+	}
+
+	private void drain()
+	{
+		List<Message> messages = new ArrayList<Message>();
+		while (true)
+		{
+			try
+			{
+				messages.add(queue.take());
+			}
+			catch (InterruptedException ie)
+			{
+				return;
+			}
+			queue.drainTo(messages);
+			for (Message message : messages)
+			{
+				if (message == END)
+				{
+					return;
+				}
+				// A message that cannot be written is reported, and the messages after it still are
+				try
+				{
+					message.writeTo(console, writer);
+				}
+				catch (RuntimeException re)
+				{
+					System.err.println("Log message not written: " + re);
+				}
+			}
+			messages.clear();
+		}
+	}
+}
@@ -0,0 +1,392 @@
+package interoperability_script;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.ECollections;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EContentAdapter;
+import org.eclipse.uml2.uml.Association;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.Property;
+import org.eclipse.uml2.uml.Stereotype;
+import org.eclipse.uml2.uml.Type;
+
+
+/**
+ * Index of the associations of a loaded model, built in a single pass after
+ * load(). For each class it holds the associated classes keyed by the
+ * stereotype applied to them and the member-end role of the association, so
+ * that the interoperability rules do not have to query the UML API again.
+ * 
+ * The index also holds the super-language and carrying-language closures
+ * (Rules 12 and 13) as bitsets over dense language ids. It becomes stale as
+ * soon as the model is edited in memory, and interoperability.getIndex()
+ * then rebuilds it.
+ */
+
+class ModelIndex
+{
+	private static final String ANY = "";
+
+	// Associated classes of each class, keyed by stereotype and member-end role
+	private final Map<org.eclipse.uml2.uml.Class, Map<String, EList<org.eclipse.uml2.uml.Class>>> neighbors = new LinkedHashMap<org.eclipse.uml2.uml.Class, Map<String, EList<org.eclipse.uml2.uml.Class>>>();
+	// Qualified names of the stereotypes applied to each class
+	private final Map<org.eclipse.uml2.uml.Class, Set<String>> stereotypes = new LinkedHashMap<org.eclipse.uml2.uml.Class, Set<String>>();
+	
+	// Dense ids of the languages and of every class reached through superLanguage/carryingLanguage
+	private final Map<org.eclipse.uml2.uml.Class, Integer> languageIds = new HashMap<org.eclipse.uml2.uml.Class, Integer>();
+	private final EList<org.eclipse.uml2.uml.Class> languages = new BasicEList<org.eclipse.uml2.uml.Class>();
+	// Reflexive transitive closures of superLanguage and carryingLanguage, by language id
+	private BitSet[] superLanguages;
+	private BitSet[] carryingLanguages;
+	// Ids of the format languages of each Message-Passing System
+	private final Map<org.eclipse.uml2.uml.Class, BitSet> formats = new HashMap<org.eclipse.uml2.uml.Class, BitSet>();
+	
+	private final org.eclipse.uml2.uml.Package root;
+	private final Notifier observed;
+	private final EContentAdapter invalidator;
+	private volatile boolean stale = false;
+
+	private ModelIndex(org.eclipse.uml2.uml.Package root)
+	{
+		this.root = root;
+		this.observed = root.eResource() != null ? root.eResource() : root;
+		this.invalidator = new EContentAdapter()
+		{
+			@Override
+			public void notifyChanged(Notification notification)
+			{
+				super.notifyChanged(notification);
+				if (!notification.isTouch() && notification.getEventType() != Notification.REMOVING_ADAPTER && !isResultValue(notification.getFeature()))
+				{
+					invalidate();
+				}
+			}
+		};
+	}
+
+	// Indexes every class owned by _package (and nested packages) and every class associated to them
+	protected static ModelIndex build(org.eclipse.uml2.uml.Package _package)
+	{
+		ModelIndex index = new ModelIndex(_package);
+		EList<org.eclipse.uml2.uml.Class> pending = new BasicEList<org.eclipse.uml2.uml.Class>();
+		collectClasses(_package, pending);
+		while (!pending.isEmpty())
+		{
+			org.eclipse.uml2.uml.Class _class = pending.remove(pending.size()-1);
+			if (!index.neighbors.containsKey(_class))
+			{
+				index.indexClass(_class, pending);
+			}
+		}
+		index.indexLanguages();
+		index.observed.eAdapters().add(index.invalidator);
+		return index;
+	}
+	
+	// Results written back by the script (the "satisfied" value of a Communication Need) do not invalidate the index
+	protected static boolean isResultValue(Object feature)
+	{
+		return feature instanceof EStructuralFeature && "satisfied".equals(((EStructuralFeature) feature).getName());
+	}
+	
+	// Marks the index as out of date and stops listening to the model
+	protected void invalidate()
+	{
+		if (!stale)
+		{
+			stale = true;
+			observed.eAdapters().remove(invalidator);
+		}
+	}
+	
+	protected boolean isStale()
+	{
+		return stale;
+	}
+	
+	protected org.eclipse.uml2.uml.Package getRoot()
+	{
+		return root;
+	}
+
+	private static void collectClasses(org.eclipse.uml2.uml.Package _package, EList<org.eclipse.uml2.uml.Class> classes)
+	{
+		for (Type type : _package.getOwnedTypes())
+		{
+			if (type instanceof org.eclipse.uml2.uml.Class)
+			{
+				classes.add((org.eclipse.uml2.uml.Class) type);
+			}
+		}
+		for (Package pack : _package.getNestedPackages())
+		{
+			collectClasses(pack, classes);
+		}
+	}
+
+	private void indexClass(org.eclipse.uml2.uml.Class _class, EList<org.eclipse.uml2.uml.Class> pending)
+	{
+		Map<String, EList<org.eclipse.uml2.uml.Class>> classNeighbors = new HashMap<String, EList<org.eclipse.uml2.uml.Class>>();
+		neighbors.put(_class, classNeighbors);
+		stereotypes.put(_class, stereotypeNames(_class));
+
+		for (Association association : _class.getAssociations())
+		{
+			for (Type endType : association.getEndTypes())
+			{
+				if (endType == _class || !(endType instanceof org.eclipse.uml2.uml.Class))
+				{
+					continue;
+				}
+				org.eclipse.uml2.uml.Class endClass = (org.eclipse.uml2.uml.Class) endType;
+
+				// Roles played by each end of the association
+				Set<String> rolesCurrent = new HashSet<String>();
+				Set<String> rolesTarget = new HashSet<String>();
+				for (Property memberEnd : association.getMemberEnds())
+				{
+					if (memberEnd.getName() != null && memberEnd.getType() == _class)
+					{
+						rolesCurrent.add(memberEnd.getName());
+					}
+					if (memberEnd.getName() != null && memberEnd.getType() == endType)
+					{
+						rolesTarget.add(memberEnd.getName());
+					}
+				}
+
+				// Every query of getAssociations() this end type satisfies
+				Set<String> keys = new LinkedHashSet<String>();
+				Set<String> endStereotypes = new LinkedHashSet<String>();
+				endStereotypes.add(ANY);
+				endStereotypes.addAll(stereotypeNames(endClass));
+				for (String stereotype : endStereotypes)
+				{
+					keys.add(key(stereotype, ANY, ANY));
+					for (String role : rolesTarget)
+					{
+						keys.add(key(stereotype, ANY, role));
+					}
+					for (String role : rolesCurrent)
+					{
+						keys.add(key(stereotype, role, ANY));
+					}
+				}
+				for (String key : keys)
+				{
+					EList<org.eclipse.uml2.uml.Class> classesList = classNeighbors.get(key);
+					if (classesList == null)
+					{
+						classesList = new BasicEList<org.eclipse.uml2.uml.Class>();
+						classNeighbors.put(key, classesList);
+					}
+					classesList.add(endClass);
+				}
+
+				if (!neighbors.containsKey(endClass))
+				{
+					pending.add(endClass);
+				}
+			}
+		}
+
+		for (Map.Entry<String, EList<org.eclipse.uml2.uml.Class>> entry : classNeighbors.entrySet())
+		{
+			entry.setValue(ECollections.unmodifiableEList(entry.getValue()));
+		}
+	}
+
+	private void indexLanguages()
+	{
+		// Assign ids to the languages and to the classes they reach through superLanguage/carryingLanguage
+		EList<org.eclipse.uml2.uml.Class> pending = new BasicEList<org.eclipse.uml2.uml.Class>();
+		for (Map.Entry<org.eclipse.uml2.uml.Class, Set<String>> entry : stereotypes.entrySet())
+		{
+			if (entry.getValue().contains("RootInteroperability::Language") || entry.getValue().contains("RootInteroperability::Reference Language"))
+			{
+				pending.add(entry.getKey());
+			}
+		}
+		while (!pending.isEmpty())
+		{
+			org.eclipse.uml2.uml.Class lang = pending.remove(pending.size()-1);
+			if (!languageIds.containsKey(lang))
+			{
+				languageIds.put(lang, languages.size());
+				languages.add(lang);
+				pending.addAll(get(lang, null, null, "superLanguage"));
+				pending.addAll(get(lang, null, null, "carryingLanguage"));
+			}
+		}
+		
+		superLanguages = new BitSet[languages.size()];
+		carryingLanguages = new BitSet[languages.size()];
+		for (int id = 0; id < languages.size(); id++)
+		{
+			superLanguages[id] = closure(id, "superLanguage");
+			carryingLanguages[id] = closure(id, "carryingLanguage");
+		}
+		
+		for (Map.Entry<org.eclipse.uml2.uml.Class, Set<String>> entry : stereotypes.entrySet())
+		{
+			if (entry.getValue().contains("RootInteroperability::Message-Passing System"))
+			{
+				BitSet mpsFormats = new BitSet(languages.size());
+				for (org.eclipse.uml2.uml.Class lang : get(entry.getKey(), "RootInteroperability::Language", null, "format"))
+				{
+					mpsFormats.set(languageIds.get(lang));
+				}
+				formats.put(entry.getKey(), mpsFormats);
+			}
+		}
+	}
+	
+	// Languages reachable from the language id through the given member end, itself included (Rules 12 and 13)
+	private BitSet closure(int id, String memberEndTarget)
+	{
+		BitSet reached = new BitSet(languages.size());
+		int[] stack = new int[languages.size()];
+		int top = 0;
+		reached.set(id);
+		stack[top++] = id;
+		while (top > 0)
+		{
+			for (org.eclipse.uml2.uml.Class next : get(languages.get(stack[--top]), null, null, memberEndTarget))
+			{
+				int nextId = languageIds.get(next);
+				if (!reached.get(nextId))
+				{
+					reached.set(nextId);
+					stack[top++] = nextId;
+				}
+			}
+		}
+		return reached;
+	}
+	
+	private static Set<String> stereotypeNames(org.eclipse.uml2.uml.Class _class)
+	{
+		Set<String> names = new HashSet<String>();
+		for (Stereotype stereotype : _class.getAppliedStereotypes())
+		{
+			names.add(stereotype.getQualifiedName());
+		}
+		return names;
+	}
+
+	private static String key(String stereotype, String memberEndCurrent, String memberEndTarget)
+	{
+		return stereotype + '|' + memberEndCurrent + '|' + memberEndTarget;
+	}
+
+	// Returns the indexed (read-only) result of interoperability.getAssociations(), or null if it is not indexed
+	protected EList<org.eclipse.uml2.uml.Class> get(org.eclipse.uml2.uml.Class _class, String stereotype, String memberEndCurrent, String memberEndTarget)
+	{
+		Map<String, EList<org.eclipse.uml2.uml.Class>> classNeighbors = neighbors.get(_class);
+		if (classNeighbors == null || (memberEndCurrent != null && memberEndTarget != null))
+		{
+			return null;
+		}
+		EList<org.eclipse.uml2.uml.Class> classesList = classNeighbors.get(key(stereotype == null ? ANY : stereotype, memberEndCurrent == null ? ANY : memberEndCurrent, memberEndTarget == null ? ANY : memberEndTarget));
+		if (classesList == null)
+		{
+			return ECollections.emptyEList();
+		}
+		return classesList;
+	}
+
+	// Whether the given stereotype is applied to _class
+	protected boolean hasStereotype(org.eclipse.uml2.uml.Class _class, String stereotype)
+	{
+		Set<String> names = stereotypes.get(_class);
+		if (names == null)
+		{
+			return _class.getAppliedStereotype(stereotype) != null;
+		}
+		return names.contains(stereotype);
+	}
+
+	// Whether superLang is lang or one of its super languages (Rule 12)
+	protected boolean isSuperLanguage(org.eclipse.uml2.uml.Class lang, org.eclipse.uml2.uml.Class superLang)
+	{
+		Integer id = languageIds.get(lang);
+		Integer superId = languageIds.get(superLang);
+		if (id == null || superId == null)
+		{
+			return lang == superLang;
+		}
+		return superLanguages[id].get(superId);
+	}
+	
+	// Whether a carrying language of lang (Rule 13) is a format of the Message-Passing System (Rule 11)
+	protected boolean isCompatible(org.eclipse.uml2.uml.Class lang, org.eclipse.uml2.uml.Class mps)
+	{
+		Integer id = languageIds.get(lang);
+		BitSet mpsFormats = formats.get(mps);
+		if (id == null || mpsFormats == null)
+		{
+			return false;
+		}
+		return carryingLanguages[id].intersects(mpsFormats);
+	}
+	
+	// Indexed classes with the given stereotype applied, in indexing order
+	protected EList<org.eclipse.uml2.uml.Class> getClasses(String stereotype)
+	{
+		EList<org.eclipse.uml2.uml.Class> classesList = new BasicEList<org.eclipse.uml2.uml.Class>();
+		for (Map.Entry<org.eclipse.uml2.uml.Class, Set<String>> entry : stereotypes.entrySet())
+		{
+			if (entry.getValue().contains(stereotype))
+			{
+				classesList.add(entry.getKey());
+			}
+		}
+		return classesList;
+	}
+	
+	protected int getLanguageCount()
+	{
+		return languages.size();
+	}
+	
+	// Dense id of the language, or -1 if it is not a language of the model
+	protected int getLanguageId(org.eclipse.uml2.uml.Class lang)
+	{
+		Integer id = languageIds.get(lang);
+		return id == null ? -1 : id;
+	}
+	
+	protected org.eclipse.uml2.uml.Class getLanguage(int id)
+	{
+		return languages.get(id);
+	}
+	
+	// Ids of lang and all of its super languages (Rule 12)
+	protected BitSet getSuperLanguages(int id)
+	{
+		return superLanguages[id];
+	}
+	
+	// Ids of lang and all of its carrying languages (Rule 13)
+	protected BitSet getCarryingLanguages(int id)
+	{
+		return carryingLanguages[id];
+	}
+	
+	// Ids of the format languages of the Message-Passing System, or null if _class is not one
+	protected BitSet getFormats(org.eclipse.uml2.uml.Class mps)
+	{
+		return formats.get(mps);
+	}
+}
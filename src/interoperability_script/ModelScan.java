@@ -0,0 +1,162 @@
+package interoperability_script;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.uml2.uml.Association;
+import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.Property;
+import org.eclipse.uml2.uml.Stereotype;
+import org.eclipse.uml2.uml.Type;
+
+
+/**
+ * Single traversal of the package tree that feeds both the multiplicity
+ * checks and the interoperability rules. Every class is classified once by
+ * its applied stereotypes, and the association multiplicities checked for
+ * its stereotype are counted in one sweep of its associations. The scan
+ * runs on the calling thread: the caches UML2 uses to resolve stereotypes
+ * and associations are not thread-safe.
+ */
+
+class ModelScan
+{
+	// Association multiplicities of a class, as checked by the multiplicity rules
+	protected static class Multiplicities
+	{
+		protected int actors = 0;
+		protected int languages = 0;
+		protected int referenceLanguages = 0;
+		protected int formats = 0; // Languages at the format end
+		protected int addressingNeeds = 0; // Communication Needs for which the class is the addressingNeed end
+		protected int identifiers = 0; // Actors for which the class is the identifier end
+	}
+
+	// Classes with a single stereotype, with the name of the stereotype and their multiplicities, in model order
+	protected final EList<org.eclipse.uml2.uml.Class> classes = new BasicEList<org.eclipse.uml2.uml.Class>();
+	protected final List<String> stereotypes = new ArrayList<String>();
+	protected final List<Multiplicities> multiplicities = new ArrayList<Multiplicities>();
+	// Communication Needs, in model order
+	protected final EList<org.eclipse.uml2.uml.Class> communicationNeeds = new BasicEList<org.eclipse.uml2.uml.Class>();
+	protected int numElements = 0;
+	protected int numClasses = 0;
+
+	private ModelScan()
+	{
+	}
+
+	// Scans _package and its nested packages, in model order
+	protected static ModelScan scan(org.eclipse.uml2.uml.Package _package)
+	{
+		ModelScan result = new ModelScan();
+		result.add(_package);
+		return result;
+	}
+
+	private void add(org.eclipse.uml2.uml.Package _package)
+	{
+		for (Type type : _package.getOwnedTypes())
+		{
+			numElements++;
+			if (type instanceof org.eclipse.uml2.uml.Class)
+			{
+				numClasses++;
+				visit((org.eclipse.uml2.uml.Class) type);
+			}
+		}
+		for (Package pack : _package.getNestedPackages())
+		{
+			add(pack);
+		}
+	}
+
+	private void visit(org.eclipse.uml2.uml.Class _class)
+	{
+		EList<Stereotype> listStereotypes = _class.getAppliedStereotypes();
+		for (Stereotype stereotype : listStereotypes)
+		{
+			if ("RootInteroperability::Communication Need".equals(stereotype.getQualifiedName()))
+			{
+				communicationNeeds.add(_class);
+				break;
+			}
+		}
+		if (listStereotypes.size() == 1)
+		{
+			String name = listStereotypes.get(0).getName();
+			classes.add(_class);
+			stereotypes.add(name);
+			multiplicities.add(name.equals("Language") || name.equals("Reference Language") ? null : count(_class));
+		}
+	}
+
+	// Counts the multiplicities of _class in one sweep of its associations, as getAssociations() would select
+	// the associated classes
+	private static Multiplicities count(org.eclipse.uml2.uml.Class _class)
+	{
+		Multiplicities mult = new Multiplicities();
+		for (Association association : _class.getAssociations())
+		{
+			for (Type endType : association.getEndTypes())
+			{
+				if (endType == _class)
+				{
+					continue;
+				}
+				Set<String> endStereotypes = new HashSet<String>();
+				for (Stereotype stereotype : endType.getAppliedStereotypes())
+				{
+					endStereotypes.add(stereotype.getQualifiedName());
+				}
+				boolean format = false;
+				boolean addressingNeed = false;
+				boolean identifier = false;
+				for (Property memberEnd : association.getMemberEnds())
+				{
+					if (memberEnd.getType() == endType && "format".equals(memberEnd.getName()))
+					{
+						format = true;
+					}
+					if (memberEnd.getType() == _class && "addressingNeed".equals(memberEnd.getName()))
+					{
+						addressingNeed = true;
+					}
+					if (memberEnd.getType() == _class && "identifier".equals(memberEnd.getName()))
+					{
+						identifier = true;
+					}
+				}
+
+				if (endStereotypes.contains("RootInteroperability::Actor"))
+				{
+					mult.actors++;
+					if (identifier)
+					{
+						mult.identifiers++;
+					}
+				}
+				if (endStereotypes.contains("RootInteroperability::Language"))
+				{
+					mult.languages++;
+					if (format)
+					{
+						mult.formats++;
+					}
+				}
+				if (endStereotypes.contains("RootInteroperability::Reference Language"))
+				{
+					mult.referenceLanguages++;
+				}
+				if (endStereotypes.contains("RootInteroperability::Communication Need") && addressingNeed)
+				{
+					mult.addressingNeeds++;
+				}
+			}
+		}
+		return mult;
+	}
+}
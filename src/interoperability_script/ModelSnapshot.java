@@ -0,0 +1,673 @@
+package interoperability_script;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.emf.common.util.BasicEList;
+import org.eclipse.emf.common.util.EList;
+
+
+/**
+ * Binary snapshot of the part of a model the interoperability rules need:
+ * the compiled actors, Message-Passing Systems, languages and Language
+ * Translations, with their flags, the addressing of every hop (Rule 14) and
+ * the Communication Needs. Lists are stored in CSR form (an offset array and
+ * one value array) and strings as UTF-8. The snapshot records the SHA-256
+ * hash of the .uml file it was compiled from, so that a stale snapshot can be
+ * told apart, and is read back through a memory-mapped buffer without EMF.
+ */
+
+class ModelSnapshot
+{
+	private static final int MAGIC = 0x494F5053; // IOPS
+	private static final int VERSION = 1;
+
+	protected byte[] hash;
+	protected int numElements;
+	protected int numClasses;
+
+	// Actors and Message-Passing Systems, by node id
+	protected String[] nodeNames;
+	protected int[] flags;
+	protected int[][] mpsOfActor;
+	protected int[][] actorsOfMPS;
+	protected int[][] actorLanguages;
+	protected int[][] compatibleLanguages;
+	// Actor pairs (flattened) of each Message-Passing System whose hop satisfies addressing (Rule 14)
+	protected int[][] addressable;
+
+	// Languages and Language Translations
+	protected String[] languageNames;
+	protected int[][] translationsOf;
+	protected int[][] translators;
+	protected int[][] translationLanguages;
+	protected boolean[] correct;
+
+	// Communication Needs, in model order: actors, sub Communication Needs (addressingNeed) and the super
+	// languages of the reference language, null if there is not exactly one
+	protected String[] cnNames;
+	protected int[][] cnActors;
+	protected int[][] cnAddressingNeeds;
+	protected int[][] cnReferenceLanguages;
+
+	// Sets built from the arrays above, for the evaluation
+	private BitSet[] actorLanguageSet;
+	private BitSet[] compatibleSet;
+	private BitSet[] referenceSet;
+	private Set<Long> addressableHops;
+
+	private ModelSnapshot()
+	{
+	}
+
+	// Snapshot of a compiled model and its Communication Needs
+	protected static ModelSnapshot compile(CompiledModel model, EList<org.eclipse.uml2.uml.Class> listCN, byte[] hash, int numElements, int numClasses)
+	{
+		ModelSnapshot snapshot = new ModelSnapshot();
+		snapshot.hash = hash;
+		snapshot.numElements = numElements;
+		snapshot.numClasses = numClasses;
+
+		int numNodes = model.nodes.length;
+		snapshot.nodeNames = new String[numNodes];
+		snapshot.compatibleLanguages = new int[numNodes][];
+		snapshot.addressable = new int[numNodes][];
+		for (int id = 0; id < numNodes; id++)
+		{
+			snapshot.nodeNames[id] = model.nodes[id].getName();
+			snapshot.compatibleLanguages[id] = toArray(model.compatibleLanguages[id]);
+			Set<Integer> actors = new LinkedHashSet<Integer>();
+			for (int actor : model.actorsOfMPS[id])
+			{
+				actors.add(actor);
+			}
+			List<Integer> pairs = new ArrayList<Integer>();
+			for (int currActor : actors)
+			{
+				for (int nextActor : actors)
+				{
+					if (currActor != nextActor && interoperability.addressingSatisfied(model.nodes[currActor], model.nodes[nextActor], model.nodes[id], new BasicEList<org.eclipse.uml2.uml.Class>()))
+					{
+						pairs.add(currActor);
+						pairs.add(nextActor);
+					}
+				}
+			}
+			snapshot.addressable[id] = new int[pairs.size()];
+			for (int i = 0; i < pairs.size(); i++)
+			{
+				snapshot.addressable[id][i] = pairs.get(i);
+			}
+		}
+		snapshot.flags = model.flags;
+		snapshot.mpsOfActor = model.mpsOfActor;
+		snapshot.actorsOfMPS = model.actorsOfMPS;
+		snapshot.actorLanguages = model.actorLanguages;
+
+		snapshot.languageNames = new String[model.index.getLanguageCount()];
+		for (int lang = 0; lang < snapshot.languageNames.length; lang++)
+		{
+			snapshot.languageNames[lang] = model.index.getLanguage(lang).getName();
+		}
+		snapshot.translationsOf = model.translationsOf;
+		snapshot.translators = model.translators;
+		snapshot.translationLanguages = model.translationLanguages;
+		snapshot.correct = model.correct;
+
+		Map<org.eclipse.uml2.uml.Class, Integer> cnIds = new HashMap<org.eclipse.uml2.uml.Class, Integer>();
+		for (org.eclipse.uml2.uml.Class cn : listCN)
+		{
+			if (!cnIds.containsKey(cn))
+			{
+				cnIds.put(cn, cnIds.size());
+			}
+		}
+		int numCN = listCN.size();
+		snapshot.cnNames = new String[numCN];
+		snapshot.cnActors = new int[numCN][];
+		snapshot.cnAddressingNeeds = new int[numCN][];
+		snapshot.cnReferenceLanguages = new int[numCN][];
+		for (int i = 0; i < numCN; i++)
+		{
+			org.eclipse.uml2.uml.Class cn = listCN.get(i);
+			snapshot.cnNames[i] = cn.getName();
+			EList<org.eclipse.uml2.uml.Class> actors = interoperability.getNeighbors(cn, "RootInteroperability::Actor", null, null);
+			snapshot.cnActors[i] = new int[actors.size()];
+			for (int j = 0; j < actors.size(); j++)
+			{
+				snapshot.cnActors[i][j] = model.getNodeId(actors.get(j));
+			}
+			List<Integer> needs = new ArrayList<Integer>();
+			for (org.eclipse.uml2.uml.Class subcn : interoperability.getNeighbors(cn, "RootInteroperability::Communication Need", null, "addressingNeed"))
+			{
+				// Sub Communication Needs outside the model are never satisfied
+				needs.add(cnIds.containsKey(subcn) ? cnIds.get(subcn) : -1);
+			}
+			snapshot.cnAddressingNeeds[i] = new int[needs.size()];
+			for (int j = 0; j < needs.size(); j++)
+			{
+				snapshot.cnAddressingNeeds[i][j] = needs.get(j);
+			}
+			BitSet reference = interoperability.getReferenceSuperLanguages(model, cn);
+			snapshot.cnReferenceLanguages[i] = reference != null ? toArray(reference) : null;
+		}
+		snapshot.buildSets();
+		return snapshot;
+	}
+
+	// SHA-256 hash of a file
+	protected static byte[] hash(File file) throws IOException
+	{
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsae)
+		{
+			throw new IOException(nsae);
+		}
+		InputStream in = new FileInputStream(file);
+		try
+		{
+			byte[] buffer = new byte[65536];
+			int read;
+			while ((read = in.read(buffer)) > 0)
+			{
+				digest.update(buffer, 0, read);
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return digest.digest();
+	}
+
+	// Writes the snapshot to a temporary file that then replaces file, so that a snapshot being replaced is
+	// never left half written
+	protected void write(File file) throws IOException
+	{
+		File temp = new File(file.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(hash.length);
+			out.write(hash);
+			out.writeInt(numElements);
+			out.writeInt(numClasses);
+
+			writeStrings(out, nodeNames);
+			writeInts(out, flags);
+			writeCSR(out, mpsOfActor);
+			writeCSR(out, actorsOfMPS);
+			writeCSR(out, actorLanguages);
+			writeCSR(out, compatibleLanguages);
+			writeCSR(out, addressable);
+
+			writeStrings(out, languageNames);
+			writeCSR(out, translationsOf);
+			writeCSR(out, translators);
+			writeCSR(out, translationLanguages);
+			int[] correctInts = new int[correct.length];
+			for (int i = 0; i < correct.length; i++)
+			{
+				correctInts[i] = correct[i] ? 1 : 0;
+			}
+			writeInts(out, correctInts);
+
+			writeStrings(out, cnNames);
+			writeCSR(out, cnActors);
+			writeCSR(out, cnAddressingNeeds);
+			int[] hasReference = new int[cnReferenceLanguages.length];
+			int[][] references = new int[cnReferenceLanguages.length][];
+			for (int i = 0; i < references.length; i++)
+			{
+				hasReference[i] = cnReferenceLanguages[i] != null ? 1 : 0;
+				references[i] = cnReferenceLanguages[i] != null ? cnReferenceLanguages[i] : new int[0];
+			}
+			writeInts(out, hasReference);
+			writeCSR(out, references);
+		}
+		finally
+		{
+			out.close();
+		}
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException amnse)
+		{
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	// Hash of the model a snapshot was compiled from, read from file through a stream, or null if it is not a
+	// snapshot of this version. Unlike read(), it leaves no mapping of the file, which could not be replaced
+	// while mapped on Windows
+	protected static byte[] readHash(File file) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				return null;
+			}
+			int length = in.readInt();
+			if (length < 0 || length > 64)
+			{
+				return null;
+			}
+			byte[] hash = new byte[length];
+			in.readFully(hash);
+			return hash;
+		}
+		catch (IOException ioe)
+		{
+			// Truncated
+			return null;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	// Snapshot read from file, or null if it is not a snapshot of this version. The file stays mapped until
+	// the buffer is collected, so check it with readHash() first when it may have to be replaced
+	protected static ModelSnapshot read(File file) throws IOException
+	{
+		FileInputStream in = new FileInputStream(file);
+		try
+		{
+			FileChannel channel = in.getChannel();
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			if (buffer.remaining() < 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+			{
+				return null;
+			}
+			ModelSnapshot snapshot = new ModelSnapshot();
+			snapshot.hash = new byte[buffer.getInt()];
+			buffer.get(snapshot.hash);
+			snapshot.numElements = buffer.getInt();
+			snapshot.numClasses = buffer.getInt();
+
+			snapshot.nodeNames = readStrings(buffer);
+			snapshot.flags = readInts(buffer);
+			snapshot.mpsOfActor = readCSR(buffer);
+			snapshot.actorsOfMPS = readCSR(buffer);
+			snapshot.actorLanguages = readCSR(buffer);
+			snapshot.compatibleLanguages = readCSR(buffer);
+			snapshot.addressable = readCSR(buffer);
+
+			snapshot.languageNames = readStrings(buffer);
+			snapshot.translationsOf = readCSR(buffer);
+			snapshot.translators = readCSR(buffer);
+			snapshot.translationLanguages = readCSR(buffer);
+			int[] correctInts = readInts(buffer);
+			snapshot.correct = new boolean[correctInts.length];
+			for (int i = 0; i < correctInts.length; i++)
+			{
+				snapshot.correct[i] = correctInts[i] != 0;
+			}
+
+			snapshot.cnNames = readStrings(buffer);
+			snapshot.cnActors = readCSR(buffer);
+			snapshot.cnAddressingNeeds = readCSR(buffer);
+			int[] hasReference = readInts(buffer);
+			snapshot.cnReferenceLanguages = readCSR(buffer);
+			for (int i = 0; i < hasReference.length; i++)
+			{
+				if (hasReference[i] == 0)
+				{
+					snapshot.cnReferenceLanguages[i] = null;
+				}
+			}
+			snapshot.buildSets();
+			return snapshot;
+		}
+		catch (RuntimeException re)
+		{
+			// Truncated or corrupt
+			return null;
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	private void buildSets()
+	{
+		actorLanguageSet = new BitSet[nodeNames.length];
+		compatibleSet = new BitSet[nodeNames.length];
+		addressableHops = new HashSet<Long>();
+		for (int id = 0; id < nodeNames.length; id++)
+		{
+			actorLanguageSet[id] = toBitSet(actorLanguages[id]);
+			compatibleSet[id] = toBitSet(compatibleLanguages[id]);
+			for (int i = 0; i < addressable[id].length; i += 2)
+			{
+				addressableHops.add(hopKey(addressable[id][i], id, addressable[id][i + 1]));
+			}
+		}
+		referenceSet = new BitSet[cnNames.length];
+		for (int cn = 0; cn < cnNames.length; cn++)
+		{
+			referenceSet[cn] = cnReferenceLanguages[cn] != null ? toBitSet(cnReferenceLanguages[cn]) : null;
+		}
+	}
+
+	private long hopKey(int currActor, int mps, int nextActor)
+	{
+		return ((long) currActor * nodeNames.length + mps) * nodeNames.length + nextActor;
+	}
+
+	// Rule 1 for a top-level Communication Need: every pair {i, j, satisfied (0 or 1)} of the indices of its
+	// actors, in the order of interoperability.communicationNeedSatisfied
+	protected List<int[]> evaluate(int cn)
+	{
+		Evaluation evaluation = new Evaluation();
+		evaluation.cnStack.add(cn);
+		return evaluation.pairs(cn);
+	}
+
+	// Evaluation of one top-level Communication Need, with the sub Communication Needs already evaluated and
+	// the cycle detection of interoperability.subCommunicationNeedSatisfied
+	private class Evaluation
+	{
+		private final Boolean[] subCNResults = new Boolean[cnNames.length];
+		private final List<Integer> cnStack = new ArrayList<Integer>();
+		private int cycleDepth = Integer.MAX_VALUE;
+
+		private List<int[]> pairs(int cn)
+		{
+			List<int[]> pairs = new ArrayList<int[]>();
+			int[] actors = cnActors[cn];
+			// The initial actors of the pairs already searched are not crossed again, as in the path search
+			BitSet visited = new BitSet(nodeNames.length);
+			for (int i = 0; i < actors.length; i++)
+			{
+				for (int j = i + 1; j < actors.length; j++)
+				{
+					if (actors[i] != actors[j])
+					{
+						visited.set(actors[i]);
+						boolean satisfied = search(cn, actors[i], actors[j], toBitSet(actorLanguages[actors[i]]), visited);
+						pairs.add(new int[] {i, j, satisfied ? 1 : 0});
+					}
+				}
+			}
+			return pairs;
+		}
+
+		// Rule 2: whether there is a simple path from currActor to targetActor that does not cross visited
+		private boolean search(int cn, int currActor, int targetActor, BitSet allowed, BitSet visited)
+		{
+			if (currActor == targetActor)
+			{
+				return true;
+			}
+			for (int mps : mpsOfActor[currActor])
+			{
+				if (visited.get(mps))
+				{
+					continue;
+				}
+				for (int actor : actorsOfMPS[mps])
+				{
+					if (visited.get(actor))
+					{
+						continue;
+					}
+					BitSet next = getAllowedLanguages(cn, currActor, actor, mps, allowed);
+					if (!next.isEmpty() && addressingNeedSatisfied(cn, currActor, actor, mps))
+					{
+						visited.set(mps);
+						visited.set(actor);
+						boolean found = search(cn, actor, targetActor, next, visited);
+						visited.clear(actor);
+						visited.clear(mps);
+						if (found)
+						{
+							return true;
+						}
+					}
+				}
+			}
+			return false;
+		}
+
+		// Rules 8 to 10
+		private BitSet getAllowedLanguages(int cn, int currActor, int nextActor, int mps, BitSet allowed)
+		{
+			BitSet next = new BitSet();
+			BitSet reference = referenceSet[cn];
+			if (reference == null)
+			{
+				return next;
+			}
+
+			// Rule 9
+			for (int lang = allowed.nextSetBit(0); lang >= 0; lang = allowed.nextSetBit(lang + 1))
+			{
+				if (actorLanguageSet[currActor].get(lang) && actorLanguageSet[nextActor].get(lang) && compatibleSet[mps].get(lang) && reference.get(lang))
+				{
+					next.set(lang);
+				}
+			}
+
+			// Rule 10 (union)
+			for (int lang : actorLanguages[currActor])
+			{
+				if (!allowed.get(lang) || !reference.get(lang))
+				{
+					continue;
+				}
+				for (int langTrans : translationsOf[lang])
+				{
+					if (!contains(translators[langTrans], currActor) || !correct[langTrans])
+					{
+						continue;
+					}
+					for (int nLang : translationLanguages[langTrans])
+					{
+						if (actorLanguageSet[nextActor].get(nLang) && compatibleSet[mps].get(nLang) && lang != nLang && reference.get(nLang))
+						{
+							next.set(nLang);
+						}
+					}
+				}
+			}
+			return next;
+		}
+
+		// Rule 3 (addressing): Rule 14, or else every sub Communication Need satisfied. Rules 4 to 6 hold for
+		// every hop of the adjacency lists
+		private boolean addressingNeedSatisfied(int cn, int currActor, int nextActor, int mps)
+		{
+			if (addressableHops.contains(hopKey(currActor, mps, nextActor)))
+			{
+				return true;
+			}
+			if (cnAddressingNeeds[cn].length == 0)
+			{
+				return false;
+			}
+			for (int subcn : cnAddressingNeeds[cn])
+			{
+				if (!subCommunicationNeedSatisfied(subcn))
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private boolean subCommunicationNeedSatisfied(int subcn)
+		{
+			if (subcn < 0)
+			{
+				return false;
+			}
+			if (subCNResults[subcn] != null)
+			{
+				return subCNResults[subcn];
+			}
+			int depth = cnStack.indexOf(subcn);
+			if (depth >= 0)
+			{
+				// Cycle
+				cycleDepth = Math.min(cycleDepth, depth);
+				return false;
+			}
+
+			boolean satisfied = false;
+			depth = cnStack.size();
+			cnStack.add(subcn);
+			for (int[] pair : pairs(subcn))
+			{
+				satisfied |= pair[2] != 0;
+			}
+			cnStack.remove(depth);
+			if (cycleDepth >= depth)
+			{
+				cycleDepth = Integer.MAX_VALUE;
+				subCNResults[subcn] = satisfied;
+			}
+			return satisfied;
+		}
+	}
+
+	private static boolean contains(int[] ids, int id)
+	{
+		for (int i : ids)
+		{
+			if (i == id)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static BitSet toBitSet(int[] values)
+	{
+		BitSet bits = new BitSet();
+		for (int value : values)
+		{
+			bits.set(value);
+		}
+		return bits;
+	}
+
+	private static int[] toArray(BitSet bits)
+	{
+		int[] values = new int[bits.cardinality()];
+		int i = 0;
+		for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1))
+		{
+			values[i++] = bit;
+		}
+		return values;
+	}
+
+	private static void writeInts(DataOutputStream out, int[] values) throws IOException
+	{
+		out.writeInt(values.length);
+		for (int value : values)
+		{
+			out.writeInt(value);
+		}
+	}
+
+	private static void writeCSR(DataOutputStream out, int[][] rows) throws IOException
+	{
+		int[] offsets = new int[rows.length + 1];
+		for (int i = 0; i < rows.length; i++)
+		{
+			offsets[i + 1] = offsets[i] + rows[i].length;
+		}
+		writeInts(out, offsets);
+		out.writeInt(offsets[rows.length]);
+		for (int[] row : rows)
+		{
+			for (int value : row)
+			{
+				out.writeInt(value);
+			}
+		}
+	}
+
+	private static void writeStrings(DataOutputStream out, String[] strings) throws IOException
+	{
+		out.writeInt(strings.length);
+		for (String string : strings)
+		{
+			byte[] bytes = (string != null ? string : "").getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static int[] readInts(ByteBuffer buffer)
+	{
+		int[] values = new int[buffer.getInt()];
+		buffer.asIntBuffer().get(values);
+		buffer.position(buffer.position() + 4 * values.length);
+		return values;
+	}
+
+	private static int[][] readCSR(ByteBuffer buffer)
+	{
+		int[] offsets = readInts(buffer);
+		int[] values = readInts(buffer);
+		int[][] rows = new int[offsets.length - 1][];
+		for (int i = 0; i < rows.length; i++)
+		{
+			rows[i] = new int[offsets[i + 1] - offsets[i]];
+			System.arraycopy(values, offsets[i], rows[i], 0, rows[i].length);
+		}
+		return rows;
+	}
+
+	private static String[] readStrings(ByteBuffer buffer)
+	{
+		String[] strings = new String[buffer.getInt()];
+		for (int i = 0; i < strings.length; i++)
+		{
+			byte[] bytes = new byte[buffer.getInt()];
+			buffer.get(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+}
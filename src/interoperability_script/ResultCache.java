@@ -0,0 +1,421 @@
+package interoperability_script;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.uml2.uml.Association;
+import org.eclipse.uml2.uml.Property;
+
+
+/**
+ * On-disk cache of the results of top-level Communication Needs, across runs.
+ * An entry is keyed by the SHA-256 fingerprint of everything its evaluation
+ * can read: the Communication Need and its sub Communication Needs, the
+ * actors, Message-Passing Systems, addresses and Language Translations
+ * reachable from them, the languages of these with their super and sub
+ * languages, and the stereotypes, flags and associations among all of them,
+ * along with the settings of the run. Results refer to classes by qualified
+ * name, so that they apply to another load of an unchanged neighbourhood.
+ * The cache holds at most a given number of entries, and the least recently
+ * used ones are evicted first.
+ */
+
+class ResultCache
+{
+	private static final int MAGIC = 0x494F5243; // IORC
+	private static final int VERSION = 2;
+
+	// Stereotypes of the classes whose associations are not followed from a language or an address
+	private static final String[] USERS = {"RootInteroperability::Actor", "RootInteroperability::Abstract Actor", "RootInteroperability::Message-Passing System", "RootInteroperability::Address", "RootInteroperability::Communication Need"};
+
+	// Results of a top-level Communication Need
+	protected static class Entry
+	{
+		protected boolean satisfied;
+		protected int numCNSatisfied;
+		protected int numCNInconclusive;
+		protected int numSubCNTotal;
+		protected int truncations;
+		// Output, as written, one line each without the new line that ends it
+		protected String[] output;
+		// Qualified names of the classes implicated, satisfied, evaluated and expanded by the path search
+		protected String[] actors;
+		protected String[] mps;
+		protected String[] lang;
+		protected String[] satisfiedCN;
+		protected String[] needs;
+		protected String[] expanded;
+		// Rows of cntable.txt, and hops of the interoperability graph (Communication Need, actor,
+		// Message-Passing System, next actor) with their labels
+		protected String[][] cnTable;
+		protected String[][] graphHops;
+		protected int[] hopLabels;
+	}
+
+	// Key of a Communication Need, and the classes its results may refer to by qualified name
+	protected static class Fingerprint
+	{
+		protected final String key;
+		protected final Map<String, org.eclipse.uml2.uml.Class> classes;
+
+		private Fingerprint(String key, Map<String, org.eclipse.uml2.uml.Class> classes)
+		{
+			this.key = key;
+			this.classes = classes;
+		}
+	}
+
+	private final File file;
+	private final int capacity;
+	// Encoded entries by key, least recently used first
+	private final LinkedHashMap<String, byte[]> entries = new LinkedHashMap<String, byte[]>(16, 0.75f, true);
+
+	// Signatures of the classes of the model indexed, without their associations, and the ends of their
+	// associations, computed when first needed
+	private ModelIndex signed = null;
+	private final Map<org.eclipse.uml2.uml.Class, String> signatures = new HashMap<org.eclipse.uml2.uml.Class, String>();
+	private final Map<org.eclipse.uml2.uml.Class, List<Property>> ends = new HashMap<org.eclipse.uml2.uml.Class, List<Property>>();
+
+	private ResultCache(File file, int capacity)
+	{
+		this.file = file;
+		this.capacity = capacity;
+	}
+
+	// Cache stored in file, empty when the file is missing or is not a cache of this version
+	protected static ResultCache open(File file, int capacity)
+	{
+		ResultCache cache = new ResultCache(file, capacity);
+		if (!file.isFile())
+		{
+			return cache;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != VERSION)
+			{
+				return cache;
+			}
+			int size = in.readInt();
+			for (int i = 0; i < size; i++)
+			{
+				String key = in.readUTF();
+				byte[] entry = new byte[in.readInt()];
+				in.readFully(entry);
+				cache.entries.put(key, entry);
+			}
+		}
+		catch (IOException ioe)
+		{
+			cache.entries.clear();
+		}
+		cache.evict();
+		return cache;
+	}
+
+	// Writes the entries to the file of the cache, least recently used first
+	protected synchronized void write() throws IOException
+	{
+		try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file))))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(entries.size());
+			for (Map.Entry<String, byte[]> entry : entries.entrySet())
+			{
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().length);
+				out.write(entry.getValue());
+			}
+		}
+	}
+
+	protected synchronized Entry get(String key)
+	{
+		byte[] entry = entries.get(key);
+		if (entry == null)
+		{
+			return null;
+		}
+		try
+		{
+			return decode(entry);
+		}
+		catch (IOException ioe)
+		{
+			entries.remove(key);
+			return null;
+		}
+	}
+
+	protected synchronized void put(String key, Entry entry)
+	{
+		try
+		{
+			entries.put(key, encode(entry));
+		}
+		catch (IOException ioe)
+		{
+			// Not reached with an in-memory stream
+			throw new IllegalStateException(ioe);
+		}
+		evict();
+	}
+
+	private void evict()
+	{
+		while (entries.size() > capacity)
+		{
+			entries.remove(entries.keySet().iterator().next());
+		}
+	}
+
+	// Fingerprint of cn in the model indexed, with the settings of the run, or null when a class of its
+	// neighbourhood has no qualified name or the same as another one. Reads the model through the UML API
+	protected synchronized Fingerprint fingerprint(org.eclipse.uml2.uml.Class cn, ModelIndex index, String settings)
+	{
+		if (index != signed)
+		{
+			signed = index;
+			signatures.clear();
+			ends.clear();
+		}
+		Set<org.eclipse.uml2.uml.Class> neighbourhood = neighbourhood(cn, index);
+		Map<String, org.eclipse.uml2.uml.Class> classes = new HashMap<String, org.eclipse.uml2.uml.Class>();
+		for (org.eclipse.uml2.uml.Class _class : neighbourhood)
+		{
+			String name = _class.getQualifiedName();
+			if (name == null || classes.put(name, _class) != null)
+			{
+				return null;
+			}
+		}
+
+		List<String> names = new ArrayList<String>(classes.keySet());
+		Collections.sort(names);
+		MessageDigest digest;
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException nsae)
+		{
+			throw new IllegalStateException(nsae);
+		}
+		update(digest, settings);
+		update(digest, cn.getQualifiedName());
+		for (String name : names)
+		{
+			org.eclipse.uml2.uml.Class _class = classes.get(name);
+			update(digest, signature(_class));
+			// Ends of the associations within the neighbourhood
+			List<String> parts = new ArrayList<String>();
+			for (Property memberEnd : ends(_class))
+			{
+				if (neighbourhood.contains(memberEnd.getType()))
+				{
+					parts.add(memberEnd.getName() + ":" + memberEnd.getType().getQualifiedName());
+				}
+			}
+			Collections.sort(parts);
+			update(digest, parts.toString());
+		}
+		StringBuilder key = new StringBuilder();
+		for (byte b : digest.digest())
+		{
+			key.append(String.format("%02x", b));
+		}
+		return new Fingerprint(key.toString(), classes);
+	}
+
+	// Classes the evaluation of cn can read: cn and its sub Communication Needs, and the classes reachable from
+	// them, except that languages and addresses are not followed to the classes using them
+	private static Set<org.eclipse.uml2.uml.Class> neighbourhood(org.eclipse.uml2.uml.Class cn, ModelIndex index)
+	{
+		Set<org.eclipse.uml2.uml.Class> neighbourhood = new LinkedHashSet<org.eclipse.uml2.uml.Class>();
+		Deque<org.eclipse.uml2.uml.Class> pending = new ArrayDeque<org.eclipse.uml2.uml.Class>();
+		neighbourhood.add(cn);
+		pending.add(cn);
+		while (!pending.isEmpty())
+		{
+			org.eclipse.uml2.uml.Class _class = pending.poll();
+			boolean communicationNeed = index.hasStereotype(_class, "RootInteroperability::Communication Need");
+			boolean used = index.hasStereotype(_class, "RootInteroperability::Language") || index.hasStereotype(_class, "RootInteroperability::Reference Language") || index.hasStereotype(_class, "RootInteroperability::Address");
+			for (org.eclipse.uml2.uml.Class neighbor : index.get(_class, null, null, null))
+			{
+				boolean follow;
+				if (index.hasStereotype(neighbor, "RootInteroperability::Communication Need"))
+				{
+					follow = communicationNeed && index.get(_class, "RootInteroperability::Communication Need", null, "addressingNeed").contains(neighbor);
+				}
+				else
+				{
+					follow = !used || !isUser(neighbor, index);
+				}
+				if (follow && neighbourhood.add(neighbor))
+				{
+					pending.add(neighbor);
+				}
+			}
+		}
+		return neighbourhood;
+	}
+
+	private static boolean isUser(org.eclipse.uml2.uml.Class _class, ModelIndex index)
+	{
+		for (String stereotype : USERS)
+		{
+			if (index.hasStereotype(_class, stereotype))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// Stereotypes applied to _class and the values of theirs read by the rules
+	private String signature(org.eclipse.uml2.uml.Class _class)
+	{
+		String signature = signatures.get(_class);
+		if (signature == null)
+		{
+			List<String> parts = interoperability.getStereotypeSignature(_class);
+			Collections.sort(parts);
+			signature = _class.getQualifiedName() + parts;
+			signatures.put(_class, signature);
+		}
+		return signature;
+	}
+
+	private List<Property> ends(org.eclipse.uml2.uml.Class _class)
+	{
+		List<Property> classEnds = ends.get(_class);
+		if (classEnds == null)
+		{
+			classEnds = new ArrayList<Property>();
+			for (Association association : _class.getAssociations())
+			{
+				classEnds.addAll(association.getMemberEnds());
+			}
+			ends.put(_class, classEnds);
+		}
+		return classEnds;
+	}
+
+	private static void update(MessageDigest digest, String text)
+	{
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		digest.update((byte) (bytes.length >>> 24));
+		digest.update((byte) (bytes.length >>> 16));
+		digest.update((byte) (bytes.length >>> 8));
+		digest.update((byte) bytes.length);
+		digest.update(bytes);
+	}
+
+	private static byte[] encode(Entry entry) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeBoolean(entry.satisfied);
+		out.writeInt(entry.numCNSatisfied);
+		out.writeInt(entry.numCNInconclusive);
+		out.writeInt(entry.numSubCNTotal);
+		out.writeInt(entry.truncations);
+		writeStrings(out, entry.output);
+		writeStrings(out, entry.actors);
+		writeStrings(out, entry.mps);
+		writeStrings(out, entry.lang);
+		writeStrings(out, entry.satisfiedCN);
+		writeStrings(out, entry.needs);
+		writeStrings(out, entry.expanded);
+		out.writeInt(entry.cnTable.length);
+		for (String[] row : entry.cnTable)
+		{
+			writeStrings(out, row);
+		}
+		out.writeInt(entry.graphHops.length);
+		for (int i = 0; i < entry.graphHops.length; i++)
+		{
+			writeStrings(out, entry.graphHops[i]);
+			out.writeInt(entry.hopLabels[i]);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Entry decode(byte[] bytes) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		Entry entry = new Entry();
+		entry.satisfied = in.readBoolean();
+		entry.numCNSatisfied = in.readInt();
+		entry.numCNInconclusive = in.readInt();
+		entry.numSubCNTotal = in.readInt();
+		entry.truncations = in.readInt();
+		entry.output = readStrings(in);
+		entry.actors = readStrings(in);
+		entry.mps = readStrings(in);
+		entry.lang = readStrings(in);
+		entry.satisfiedCN = readStrings(in);
+		entry.needs = readStrings(in);
+		entry.expanded = readStrings(in);
+		entry.cnTable = new String[in.readInt()][];
+		for (int i = 0; i < entry.cnTable.length; i++)
+		{
+			entry.cnTable[i] = readStrings(in);
+		}
+		entry.graphHops = new String[in.readInt()][];
+		entry.hopLabels = new int[entry.graphHops.length];
+		for (int i = 0; i < entry.graphHops.length; i++)
+		{
+			entry.graphHops[i] = readStrings(in);
+			entry.hopLabels[i] = in.readInt();
+		}
+		return entry;
+	}
+
+	// Strings as UTF-8, with their lengths, so that no output line is limited to 64 KB
+	private static void writeStrings(DataOutputStream out, String[] strings) throws IOException
+	{
+		out.writeInt(strings.length);
+		for (String string : strings)
+		{
+			byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+	}
+
+	private static String[] readStrings(DataInputStream in) throws IOException
+	{
+		String[] strings = new String[in.readInt()];
+		for (int i = 0; i < strings.length; i++)
+		{
+			byte[] bytes = new byte[in.readInt()];
+			in.readFully(bytes);
+			strings[i] = new String(bytes, StandardCharsets.UTF_8);
+		}
+		return strings;
+	}
+}
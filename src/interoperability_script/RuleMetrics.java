@@ -0,0 +1,289 @@
+package interoperability_script;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ * Counters and timers of an evaluation, enabled with --metrics: calls,
+ * cumulative time and maximum nesting depth of each rule method, nodes
+ * expanded and paths found by the path search of each Communication Need,
+ * and calls to getAssociations and getNeighbors. Times are inclusive of the
+ * rules called from a rule. A path search whose result is shared by other
+ * Communication Needs counts its nodes expanded and paths found for each of
+ * them, and its rule calls once, as they are made once. The counters can be
+ * updated from several threads, are exposed through JMX while the program
+ * runs and are written to a tab-separated report at the end.
+ */
+
+class RuleMetrics implements RuleMetricsMBean
+{
+	protected static final int RULES = 19; // Rules 1 to 18, by number
+	private static final String NAME = "interoperability_script:type=RuleMetrics";
+
+	private final LongAdder[] calls = new LongAdder[RULES];
+	private final LongAdder[] nanos = new LongAdder[RULES];
+	private final AtomicInteger[] maxDepth = new AtomicInteger[RULES];
+	private final ThreadLocal<int[]> depth = new ThreadLocal<int[]>()
+	{
+		@Override
+		protected int[] initialValue()
+		{
+			return new int[RULES];
+		}
+	};
+	private final LongAdder associationsCalls = new LongAdder();
+	private final LongAdder neighborsCalls = new LongAdder();
+	private final AtomicInteger maxSearchDepth = new AtomicInteger();
+	// Nodes expanded and paths found, by Communication Need
+	private final Map<org.eclipse.uml2.uml.Class, LongAdder[]> searches = new ConcurrentHashMap<org.eclipse.uml2.uml.Class, LongAdder[]>();
+
+	protected RuleMetrics()
+	{
+		for (int rule = 0; rule < RULES; rule++)
+		{
+			calls[rule] = new LongAdder();
+			nanos[rule] = new LongAdder();
+			maxDepth[rule] = new AtomicInteger();
+		}
+	}
+
+	// Entry to a rule method: returns the start time to pass to end()
+	protected long start(int rule)
+	{
+		int[] current = depth.get();
+		max(maxDepth[rule], ++current[rule]);
+		return System.nanoTime();
+	}
+
+	protected void end(int rule, long start)
+	{
+		nanos[rule].add(System.nanoTime() - start);
+		calls[rule].increment();
+		depth.get()[rule]--;
+	}
+
+	protected void associations()
+	{
+		associationsCalls.increment();
+	}
+
+	protected void neighbors()
+	{
+		neighborsCalls.increment();
+	}
+
+	// Node expanded by the path search of cn, hops away from the initial actor
+	protected void expanded(org.eclipse.uml2.uml.Class cn, int hops)
+	{
+		search(cn)[0].increment();
+		max(maxSearchDepth, hops);
+	}
+
+	protected void pathFound(org.eclipse.uml2.uml.Class cn)
+	{
+		search(cn)[1].increment();
+	}
+
+	// Nodes expanded and paths found by the path search of cn so far
+	protected long[] getSearch(org.eclipse.uml2.uml.Class cn)
+	{
+		LongAdder[] counters = search(cn);
+		return new long[] {counters[0].sum(), counters[1].sum()};
+	}
+
+	// Nodes expanded and paths found by a path search of another Communication Need, shared by cn
+	protected void addSearch(org.eclipse.uml2.uml.Class cn, long nodesExpanded, long pathsFound)
+	{
+		LongAdder[] counters = search(cn);
+		counters[0].add(nodesExpanded);
+		counters[1].add(pathsFound);
+	}
+
+	private LongAdder[] search(org.eclipse.uml2.uml.Class cn)
+	{
+		LongAdder[] counters = searches.get(cn);
+		if (counters == null)
+		{
+			searches.putIfAbsent(cn, new LongAdder[] {new LongAdder(), new LongAdder()});
+			counters = searches.get(cn);
+		}
+		return counters;
+	}
+
+	private static void max(AtomicInteger max, int value)
+	{
+		int current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+		{
+			current = max.get();
+		}
+	}
+
+	// Registers the metrics with the platform MBean server, unless already registered
+	protected void register() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(NAME);
+		if (!server.isRegistered(name))
+		{
+			server.registerMBean(this, name);
+		}
+	}
+
+	protected void unregister() throws JMException
+	{
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName name = new ObjectName(NAME);
+		if (server.isRegistered(name))
+		{
+			server.unregisterMBean(name);
+		}
+	}
+
+	// Writes the report, one metric per line: metric, key (rule or Communication Need, if any) and value
+	protected void write(File file) throws IOException
+	{
+		PrintWriter report = new PrintWriter(file, "UTF-8");
+		try
+		{
+			report.printf("Metric\tKey\tValue");
+			report.println();
+			for (int rule = 1; rule < RULES; rule++)
+			{
+				if (calls[rule].sum() > 0)
+				{
+					report.printf("rule.calls\tRule %d\t%d%n", rule, calls[rule].sum());
+					report.printf("rule.time.ms\tRule %d\t%.3f%n", rule, nanos[rule].sum() / 1e6);
+					report.printf("rule.maxDepth\tRule %d\t%d%n", rule, maxDepth[rule].get());
+				}
+			}
+			for (String search : getCommunicationNeedSearches())
+			{
+				String[] fields = search.split("\t");
+				report.printf("cn.nodesExpanded\t%s\t%s%n", fields[0], fields[1]);
+				report.printf("cn.pathsFound\t%s\t%s%n", fields[0], fields[2]);
+			}
+			report.printf("search.maxDepth\t\t%d%n", getMaxSearchDepth());
+			report.printf("getAssociations.calls\t\t%d%n", getAssociationsCalls());
+			report.printf("getNeighbors.calls\t\t%d%n", getNeighborsCalls());
+		}
+		finally
+		{
+			report.close();
+		}
+	}
+
+	@Override
+	public long[] getRuleCalls()
+	{
+		long[] values = new long[RULES];
+		for (int rule = 1; rule < RULES; rule++)
+		{
+			values[rule] = calls[rule].sum();
+		}
+		return values;
+	}
+
+	@Override
+	public double[] getRuleTimeMillis()
+	{
+		double[] values = new double[RULES];
+		for (int rule = 1; rule < RULES; rule++)
+		{
+			values[rule] = nanos[rule].sum() / 1e6;
+		}
+		return values;
+	}
+
+	@Override
+	public int[] getRuleMaxDepth()
+	{
+		int[] values = new int[RULES];
+		for (int rule = 1; rule < RULES; rule++)
+		{
+			values[rule] = maxDepth[rule].get();
+		}
+		return values;
+	}
+
+	@Override
+	public long getAssociationsCalls()
+	{
+		return associationsCalls.sum();
+	}
+
+	@Override
+	public long getNeighborsCalls()
+	{
+		return neighborsCalls.sum();
+	}
+
+	@Override
+	public long getNodesExpanded()
+	{
+		long total = 0;
+		for (LongAdder[] counters : searches.values())
+		{
+			total += counters[0].sum();
+		}
+		return total;
+	}
+
+	@Override
+	public long getPathsFound()
+	{
+		long total = 0;
+		for (LongAdder[] counters : searches.values())
+		{
+			total += counters[1].sum();
+		}
+		return total;
+	}
+
+	@Override
+	public int getMaxSearchDepth()
+	{
+		return maxSearchDepth.get();
+	}
+
+	@Override
+	public String[] getCommunicationNeedSearches()
+	{
+		List<String> values = new ArrayList<String>();
+		for (Map.Entry<org.eclipse.uml2.uml.Class, LongAdder[]> entry : searches.entrySet())
+		{
+			values.add(String.format("%s\t%d\t%d", entry.getKey().getName(), entry.getValue()[0].sum(), entry.getValue()[1].sum()));
+		}
+		Collections.sort(values);
+		return values.toArray(new String[values.size()]);
+	}
+
+	@Override
+	public void reset()
+	{
+		for (int rule = 0; rule < RULES; rule++)
+		{
+			calls[rule].reset();
+			nanos[rule].reset();
+			maxDepth[rule].set(0);
+		}
+		associationsCalls.reset();
+		neighborsCalls.reset();
+		maxSearchDepth.set(0);
+		searches.clear();
+	}
+}
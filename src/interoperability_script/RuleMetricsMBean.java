@@ -0,0 +1,31 @@
+package interoperability_script;
+
+
+/**
+ * JMX view of the RuleMetrics of a run. Arrays of rule values are indexed by
+ * rule number (Rules 1 to 18, index 0 unused).
+ */
+
+public interface RuleMetricsMBean
+{
+	long[] getRuleCalls();
+
+	double[] getRuleTimeMillis();
+
+	int[] getRuleMaxDepth();
+
+	long getAssociationsCalls();
+
+	long getNeighborsCalls();
+
+	long getNodesExpanded();
+
+	long getPathsFound();
+
+	int getMaxSearchDepth();
+
+	// Nodes expanded and paths found per Communication Need, as "<name>\t<nodes>\t<paths>"
+	String[] getCommunicationNeedSearches();
+
+	void reset();
+}
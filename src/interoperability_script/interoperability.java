@@ -17,31 +17,70 @@
 package interoperability_script;
 
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.common.util.WrappedException;
+import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EContentAdapter;
 import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.eclipse.uml2.uml.Association;
+import org.eclipse.uml2.uml.Element;
 import org.eclipse.uml2.uml.Model;
-import org.eclipse.uml2.uml.Package;
+import org.eclipse.uml2.uml.Property;
 import org.eclipse.uml2.uml.Stereotype;
+import org.eclipse.uml2.uml.Package;
 import org.eclipse.uml2.uml.Type;
 import org.eclipse.uml2.uml.UMLPackage;
 import org.eclipse.uml2.uml.resource.UMLResource;
 import org.eclipse.uml2.uml.resources.util.UMLResourcesUtil;
+import org.eclipse.uml2.uml.util.UMLUtil;
 
-// GraphStream (a dynamic graph library). Used to create the interoperability graphs.
+import interoperability_script.LogSink.Category;
+import interoperability_script.LogSink.Level;
+
+// GraphStream (a dynamic graph library). Used to export and display the interoperability graphs.
 // http://graphstream-project.org/
-import org.graphstream.graph.*;
-import org.graphstream.graph.implementations.*;
 import org.graphstream.ui.view.Viewer;
 
 
@@ -53,8 +92,10 @@ import org.graphstream.ui.view.Viewer;
 public class interoperability 
 {
 
-	public static boolean DEBUG = true;
-	private static MultiGraph graph;
+	private static LogSink log;
+	private static InteroperabilityGraph graph;
+	private static volatile ModelIndex index;
+	private static volatile CompiledModel compiledModel;
 	private static File outputDir;
 	private static final ResourceSet RESOURCE_SET;
 	private static PrintWriter writer;
@@ -63,9 +104,49 @@ public class interoperability
 	private static int numClasses = 0;
 	private static int numCN = 0;
 	private static int numCNSatisfied = 0;
-	private static boolean flag_language = true;
-	private static boolean flag_address = true;
-	private static boolean drawGraph = true;
+	private static int numCNInconclusive = 0;
+	private static boolean drawGraph = false;
+	private static boolean viewGraph = false;
+	private static List<String> graphFormats = new ArrayList<String>();
+	private static int threads = 1;
+	private static List<File> batchModels = null;
+	// Number of models of a batch loaded ahead of the one being evaluated
+	private static final int BATCH_WINDOW = 2;
+	private static Engine engine = Engine.DFS;
+	private static int bestPaths = 3;
+	private static PathCost pathCost = PathCost.HOPS;
+	// Costs of a hop for pathCost: a hop, and a hop that pathCost avoids, which outweighs the hops of any path
+	private static final long HOP_COST = 1;
+	private static final long AVOIDED_HOP_COST = 1000;
+	private static boolean useSnapshot = false;
+	private static RuleMetrics metrics = null;
+	private static File metricsFile;
+	// Budget of the path search (--budget): hops of a path, states expanded and time (ms) per top-level Communication
+	// Need, and end of the run (System.nanoTime()), if set
+	private static boolean budget = false;
+	private static int maxHops = Integer.MAX_VALUE;
+	private static long maxStates = Long.MAX_VALUE;
+	private static long cnTime = 0;
+	private static long runDeadline = 0;
+	private static final ThreadLocal<Evaluation> evaluation = new ThreadLocal<Evaluation>();
+	// Results of the top-level Communication Needs and changes of the model since, once trackChanges() is called
+	private static Incremental incremental = null;
+	private static boolean watchModel = false;
+	// Time (ms) without change of the model file after which it is reloaded in watch mode
+	private static final long WATCH_DELAY = 100;
+	// Values of the stereotypes read by the rules, which a change of the model may alter
+	private static final String[] SIGNATURE_VALUES = {"isAvailable", "distortsMessage", "dropsMessage", "fixed", "correct"};
+	// Results of the Communication Needs of earlier runs (--cache), and the number of results of this model
+	// taken from it and evaluated
+	private static ResultCache resultCache = null;
+	private static int cacheEntries = 10000;
+	private static int numCacheHits = 0;
+	private static int numCacheMisses = 0;
+	// Analysis of a Communication Need not satisfied: a path exists ignoring languages and addressing, one
+	// of them has allowed languages on every hop, one of them satisfies addressing on every hop
+	private static final int PATH = 1;
+	private static final int LANGUAGES = 1 << 1;
+	private static final int ADDRESSING = 1 << 2;
 	private static int numSubCNTotal = 0;
 	private static EList<org.eclipse.uml2.uml.Class> actors_stats = new BasicEList<org.eclipse.uml2.uml.Class>();
 	private static EList<org.eclipse.uml2.uml.Class> mps_stats = new BasicEList<org.eclipse.uml2.uml.Class>();
@@ -88,7 +169,9 @@ public class interoperability
 
 	/**
 	 * The main program. It expects one argument, which is the local filesystem
-	 * path of a directory in which to load and save files.
+	 * path of a directory in which to load and save files, optionally preceded
+	 * by the --threads, --engine, --export, --log, --view, --batch, --snapshot,
+	 * --metrics, --budget, --watch and --cache options.
 	 * 
 	 * @param the program arguments, which must consist of a single filesystem
 	 * path.
@@ -101,64 +184,436 @@ public class interoperability
 		{
 			System.exit(1);
 		}
+		if (metrics != null)
+		{
+			metrics.register();
+		}
+		if (batchModels != null)
+		{
+			evaluateBatch();
+			writeMetrics();
+			writeCache();
+			return;
+		}
 		
-		// Render engine (high quality)
-		System.setProperty("org.graphstream.ui.renderer", "org.graphstream.ui.j2dviewer.J2DGraphRenderer");
+		// Create interoperability graph
+		graph = new InteroperabilityGraph("Interoperability");
 		
-		// Create MultiGraph
-		graph = new MultiGraph("Interoperability");
-        graph.addAttribute("ui.quality");
-        graph.addAttribute("ui.antialias");
-        graph.addAttribute("ui.stylesheet", "url('file:///C:/Users/User/workspace/interoperability_script/styleGraph.css')"); // Modify path
-        
-		// Create log text file
-		writer = new PrintWriter("results.txt", "UTF-8");
-		// Create log text file CN
-		writerCN = new PrintWriter("cntable.txt", "UTF-8");
-		writerCN.printf("No\tCommunication Need\tInitial Actor\tFinal Actor");
-		writerCN.println();
+		// Create log text files
+		openLog(new File("results.txt"), new File("cntable.txt"), true);
 
 		banner("Start. Interoperability metamodel conformance evaluation.");
 		
+		if (useSnapshot)
+		{
+			evaluateSnapshot(loadSnapshot(new File(outputDir, "modelName." + UMLResource.FILE_EXTENSION))); // Modify UML model name
+			closeLog();
+			return;
+		}
+		
 		// Load the model
 		Model model = (Model) load(URI.createFileURI(outputDir.getAbsolutePath()).appendSegment("modelName").appendFileExtension(UMLResource.FILE_EXTENSION)); // Modify UML model name
+		index = ModelIndex.build(model);
+		if (watchModel)
+		{
+			trackChanges(model);
+		}
+		
+		evaluateModel(model);
+		writeMetrics();
+		writeCache();
+				
+		// Save the model
+		save(model, URI.createFileURI(outputDir.getAbsolutePath()).appendSegment("savedmodel").appendFileExtension(UMLResource.FILE_EXTENSION));
+		
+		// Export interoperability graph
+		exportGraph(new File("."));
+		
+		if (watchModel)
+		{
+			watch(new File(outputDir, "modelName." + UMLResource.FILE_EXTENSION), model); // Modify UML model name
+		}
+		
+		// Close log text files
+		closeLog();
 		
+		// Display interoperability graph
+		if (viewGraph == true)
+		{
+			// Render engine (high quality)
+			System.setProperty("org.graphstream.ui.renderer", "org.graphstream.ui.j2dviewer.J2DGraphRenderer");
+			File stylesheet = new File(outputDir, "styleGraph.css");
+			Viewer viewer = graph.display(stylesheet.exists() ? stylesheet : null);
+			Thread.sleep(7000);
+			viewer.disableAutoLayout();
+		}
+	}
+	
+	// Rules checks and statistics of a loaded (and indexed) model
+	protected static void evaluateModel(Model model)
+	{
+		ModelScan scan = ModelScan.scan(model);
 		banner("Multiplicity rules checks.");
-		parsePackagesMultiplicity(model);
+		checkMultiplicity(scan);
 		
 		out("");
 		banner("Interoperability rules checks.");
 		out("");
 		out("");
-		parsePackagesInteroperability(model);
+		evaluateCommunicationNeeds(collectCommunicationNeeds(scan));
 		out("");
+		printStatistics();
+		if (metrics != null)
+		{
+			banner("Metrics.");
+			long[] calls = metrics.getRuleCalls();
+			double[] time = metrics.getRuleTimeMillis();
+			int[] depth = metrics.getRuleMaxDepth();
+			for (int rule = 1; rule < RuleMetrics.RULES; rule++)
+			{
+				if (calls[rule] > 0)
+				{
+					out(Category.STATISTICS, "Rule %d: %d calls, %.1f ms, maximum depth %d", rule, calls[rule], time[rule], depth[rule]);
+				}
+			}
+			out(Category.STATISTICS, "");
+			out(Category.STATISTICS, "Nodes expanded by the path search = %d", metrics.getNodesExpanded());
+			out(Category.STATISTICS, "Paths found = %d", metrics.getPathsFound());
+			out(Category.STATISTICS, "Maximum path search depth = %d", metrics.getMaxSearchDepth());
+			out(Category.STATISTICS, "Calls to getAssociations = %d", metrics.getAssociationsCalls());
+			out(Category.STATISTICS, "Calls to getNeighbors = %d", metrics.getNeighborsCalls());
+			out("");
+		}
+		banner("End.");
+	}
+	
+	// Statistics of the model evaluated
+	private static void printStatistics()
+	{
 		banner("Statistics.");
-		out("Number of Communication Needs satisfied = %d", numCNSatisfied);
-		out("Number of Sub Communication Needs satisfied = %d", numSubCNTotal);
-		out("Number of Actors implicated = %d", actors_stats.size());
-		out("Number of Message-Passing Systems implicated = %d", mps_stats.size());
-		out("Number of Languages implicated = %d", lang_stats.size());
+		out(Category.STATISTICS, "Number of Communication Needs satisfied = %d", numCNSatisfied);
+		if (budget)
+		{
+			out(Category.STATISTICS, "Number of Communication Needs inconclusive (budget exhausted) = %d", numCNInconclusive);
+		}
+		out(Category.STATISTICS, "Number of Sub Communication Needs satisfied = %d", numSubCNTotal);
+		out(Category.STATISTICS, "Number of Actors implicated = %d", actors_stats.size());
+		out(Category.STATISTICS, "Number of Message-Passing Systems implicated = %d", mps_stats.size());
+		out(Category.STATISTICS, "Number of Languages implicated = %d", lang_stats.size());
+		if (resultCache != null)
+		{
+			out(Category.STATISTICS, "Result cache hits = %d, misses = %d", numCacheHits, numCacheMisses);
+		}
+		out(Category.STATISTICS, "");
+		out(Category.STATISTICS, "Number of Communication Needs = %d", numCN);
+		out(Category.STATISTICS, "Number of Classes = %d", numClasses);
+		out(Category.STATISTICS, "Total number of Elements/Types = %d", numElements);
+		out("");
+	}
+	
+	// Writes the entries of --cache
+	private static void writeCache()
+	{
+		if (resultCache == null)
+		{
+			return;
+		}
+		try
+		{
+			resultCache.write();
+		}
+		catch (IOException ioe)
+		{
+			err("Cannot write the result cache: %s", ioe.getMessage());
+		}
+	}
+	
+	// Writes the report of --metrics
+	private static void writeMetrics()
+	{
+		if (metrics == null)
+		{
+			return;
+		}
+		try
+		{
+			metrics.write(metricsFile);
+		}
+		catch (IOException ioe)
+		{
+			err(ioe.getMessage());
+		}
+	}
+	
+	// Batch mode. The model files are read on a background thread, at most BATCH_WINDOW ahead of the one
+	// being evaluated, and the models are loaded, compiled and evaluated in order on the calling thread. The
+	// caches UML2 uses are shared by every resource set and are not thread-safe, so only the file reads
+	// overlap the evaluation. Each model has its results in its own directory of outputDir and a line in
+	// summary.txt, and is unloaded once evaluated
+	protected static void evaluateBatch()
+	
+	throws IOException
+	{
+		PrintWriter summary = new PrintWriter(new File(outputDir, "summary.txt"), "UTF-8");
+		summary.printf("Model\tCommunication Needs\tSatisfied\tSub Communication Needs\tClasses\tElements\tTime (ms)");
+		summary.println();
+		ExecutorService reader = Executors.newSingleThreadExecutor();
+		List<Future<byte[]>> stages = new ArrayList<Future<byte[]>>();
+		try
+		{
+			for (int i = 0; i < batchModels.size(); i++)
+			{
+				while (stages.size() < batchModels.size() && stages.size() <= i + BATCH_WINDOW)
+				{
+					final File file = batchModels.get(stages.size());
+					stages.add(reader.submit(new Callable<byte[]>()
+					{
+						@Override
+						public byte[] call() throws Exception
+						{
+							return Files.readAllBytes(file.toPath());
+						}
+					}));
+				}
+				
+				long start = System.nanoTime();
+				String name = batchModels.get(i).getName().replaceFirst("\\.[^.]*$", "");
+				CompiledModel compiled;
+				try
+				{
+					compiled = compile(batchModels.get(i), stages.get(i).get());
+				}
+				catch (ExecutionException ee)
+				{
+					err("Cannot load %s: %s", batchModels.get(i), ee.getCause());
+					summary.printf("%s\tError: %s", name, ee.getCause());
+					summary.println();
+					continue;
+				}
+				catch (IOException | RuntimeException e)
+				{
+					err("Cannot load %s: %s", batchModels.get(i), e);
+					summary.printf("%s\tError: %s", name, e);
+					summary.println();
+					continue;
+				}
+				catch (InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+					return;
+				}
+				finally
+				{
+					stages.set(i, null);
+				}
+				
+				Model model = (Model) compiled.index.getRoot();
+				File modelDir = new File(outputDir, name);
+				modelDir.mkdirs();
+				reset();
+				graph = new InteroperabilityGraph(name);
+				index = compiled.index;
+				compiledModel = compiled;
+				openLog(new File(modelDir, "results.txt"), new File(modelDir, "cntable.txt"), false);
+				banner("Start. Interoperability metamodel conformance evaluation: %s.", name);
+				evaluateModel(model);
+				save(model, URI.createFileURI(modelDir.getAbsolutePath()).appendSegment("savedmodel").appendFileExtension(UMLResource.FILE_EXTENSION));
+				exportGraph(modelDir);
+				out(Category.STATISTICS, "%s: %d of %d Communication Needs satisfied", name, numCNSatisfied, numCN);
+				closeLog();
+				
+				// Unload the model, keeping the profiles loaded
+				synchronized (RESOURCE_SET)
+				{
+					Resource resource = model.eResource();
+					resource.unload();
+					RESOURCE_SET.getResources().remove(resource);
+				}
+				index = null;
+				compiledModel = null;
+				
+				summary.printf("%s\t%d\t%d\t%d\t%d\t%d\t%d", name, numCN, numCNSatisfied, numSubCNTotal, numClasses, numElements, (System.nanoTime() - start) / 1000000);
+				summary.println();
+				summary.flush();
+			}
+		}
+		finally
+		{
+			reader.shutdownNow();
+			summary.close();
+		}
+	}
+	
+	// Loads and compiles a model of the batch mode from the contents of its file
+	private static CompiledModel compile(File file, byte[] contents)
+	
+	throws IOException
+	{
+		synchronized (RESOURCE_SET)
+		{
+			URI uri = URI.createFileURI(file.getAbsolutePath());
+			Resource resource = RESOURCE_SET.createResource(uri);
+			try
+			{
+				resource.load(new ByteArrayInputStream(contents), RESOURCE_SET.getLoadOptions());
+			}
+			catch (IOException | RuntimeException e)
+			{
+				// Drop the resource that failed to load
+				resource.unload();
+				RESOURCE_SET.getResources().remove(resource);
+				throw e;
+			}
+			Object model = EcoreUtil.getObjectByType(resource.getContents(), UMLPackage.Literals.MODEL);
+			if (model == null)
+			{
+				resource.unload();
+				RESOURCE_SET.getResources().remove(resource);
+				throw new IOException("No UML model in " + file);
+			}
+			return new CompiledModel(ModelIndex.build((Model) model));
+		}
+	}
+	
+	// Snapshot of the model, read from <model name>.snapshot in outputDir. It is compiled from the model
+	// again when it is missing, unreadable or was compiled from another version of the model
+	private static ModelSnapshot loadSnapshot(File modelFile)
+	
+	throws IOException
+	{
+		File file = new File(outputDir, modelFile.getName().replaceFirst("\\.[^.]*$", "") + ".snapshot");
+		byte[] hash = ModelSnapshot.hash(modelFile);
+		// Only an up-to-date snapshot is mapped, as a mapped one could not be replaced
+		ModelSnapshot snapshot = file.exists() && Arrays.equals(ModelSnapshot.readHash(file), hash) ? ModelSnapshot.read(file) : null;
+		if (snapshot != null)
+		{
+			return snapshot;
+		}
+		out("Compiling snapshot %s.", file.getName());
+		out("");
+		Model model = (Model) load(URI.createFileURI(modelFile.getAbsolutePath()));
+		index = ModelIndex.build(model);
+		EList<org.eclipse.uml2.uml.Class> listCN = collectCommunicationNeeds(ModelScan.scan(model));
+		snapshot = ModelSnapshot.compile(getCompiledModel(), listCN, hash, numElements, numClasses);
+		snapshot.write(file);
+		reset();
+		return snapshot;
+	}
+	
+	// Rule 1 for every Communication Need of a snapshot. Only whether each pair of actors is satisfied is
+	// reported: the snapshot has no paths to list, diagnose or draw, and no multiplicities to check
+	protected static void evaluateSnapshot(ModelSnapshot snapshot)
+	{
+		banner("Interoperability rules checks (snapshot).");
+		out("");
+		out("");
+		for (int cn = 0; cn < snapshot.cnNames.length; cn++)
+		{
+			String name = snapshot.cnNames[cn];
+			int[] actors = snapshot.cnActors[cn];
+			out("Communication Need: %s", name);
+			out("------------------------------------");
+			out("");
+			for (int[] pair : snapshot.evaluate(cn))
+			{
+				String act1 = snapshot.nodeNames[actors[pair[0]]];
+				String act2 = snapshot.nodeNames[actors[pair[1]]];
+				if (pair[2] != 0)
+				{
+					if (LogSink.isEnabled(Category.PATH, Level.INFO))
+					{
+						out(Category.PATH, "%s <--> %s: satisfied", act1, act2);
+						out(Category.PATH, "");
+					}
+					numCNSatisfied++;
+					writerCN.printf("%d & %s & %s & %s \\\\", numCNSatisfied, name, act1, act2);
+					writerCN.println();
+					writerCN.printf("\\hline");
+					writerCN.println();
+				}
+				else if (LogSink.isEnabled(Category.DIAGNOSIS, Level.INFO))
+				{
+					out(Category.DIAGNOSIS, "Communication Need::%s --> Not satisfied (%s <--> %s)", name, act1, act2);
+					out(Category.DIAGNOSIS, "");
+				}
+			}
+		}
 		out("");
-		out("Number of Communication Needs = %d", numCN);
-		out("Number of Classes = %d", numClasses);
-		out("Total number of Elements/Types = %d", numElements);
+		banner("Statistics.");
+		out(Category.STATISTICS, "Number of Communication Needs satisfied = %d", numCNSatisfied);
+		out(Category.STATISTICS, "Number of Communication Needs = %d", snapshot.cnNames.length);
+		out(Category.STATISTICS, "Number of Classes = %d", snapshot.numClasses);
+		out(Category.STATISTICS, "Total number of Elements/Types = %d", snapshot.numElements);
 		out("");
 		banner("End.");
-				
-		// Save the model
-		save(model, URI.createFileURI(outputDir.getAbsolutePath()).appendSegment("savedmodel").appendFileExtension(UMLResource.FILE_EXTENSION));
-		
-		// Close log text files
+	}
+	
+	// Makes model, indexed, the one evaluated, with the counters and statistics of the model evaluated before reset.
+	// For the benchmarks, which evaluate models built in memory
+	protected static void setModel(Model model)
+	{
+		reset();
+		index = ModelIndex.build(model);
+		compiledModel = null;
+	}
+	
+	// Counters and statistics of the model evaluated before
+	private static void reset()
+	{
+		numElements = 0;
+		numClasses = 0;
+		numCN = 0;
+		numCNSatisfied = 0;
+		numCNInconclusive = 0;
+		numSubCNTotal = 0;
+		numCacheHits = 0;
+		numCacheMisses = 0;
+		actors_stats.clear();
+		mps_stats.clear();
+		lang_stats.clear();
+	}
+	
+	// Opens results.txt and cntable.txt, and the log sink writing to results.txt (and to the console)
+	private static void openLog(File results, File cnTable, boolean console)
+	
+	throws IOException
+	{
+		// Create log text files
+		openLog(new PrintWriter(results, "UTF-8"), new PrintWriter(cnTable, "UTF-8"), console);
+	}
+	
+	// Same as openLog, to the given writers. For the benchmarks, which discard the output
+	protected static void openLog(PrintWriter results, PrintWriter cnTable, boolean console)
+	{
+		writer = results;
+		writerCN = cnTable;
+		writerCN.printf("No\tCommunication Need\tInitial Actor\tFinal Actor");
+		writerCN.println();
+		// Write the output in the background
+		log = new LogSink(writer, 4096, console);
+	}
+	
+	protected static void closeLog()
+	{
+		log.close();
+		log = null;
 		writer.close();
 		writerCN.close();
-		
-		// Display MultiGraph
-		if (drawGraph == true)
+	}
+	
+	// Writes the interoperability graph in every format of --export to directory
+	private static void exportGraph(File directory)
+	{
+		for (String format : graphFormats)
 		{
-//			graph.display();
-			Viewer viewer = graph.display();	
-			Thread.sleep(7000);
-			viewer.disableAutoLayout();
+			try
+			{
+				graph.export(format, new File(directory, "interoperability." + format));
+			}
+			catch (IOException ioe)
+			{
+				err(ioe.getMessage());
+			}
 		}
 	}
 	
@@ -168,86 +623,128 @@ public class interoperability
 	//
 	
 	protected static boolean parsePackagesMultiplicity(org.eclipse.uml2.uml.Package _package)
+	{
+		return checkMultiplicity(ModelScan.scan(_package));
+	}
+	
+	// Multiplicity checks of the classes of a scan, in model order
+	private static boolean checkMultiplicity(ModelScan scan)
 	{
 		boolean correctMultiplicity = true;
-		EList<Type> listTypes = _package.getOwnedTypes();
-		for (Type type : listTypes)
+		for (int i = 0; i < scan.classes.size(); i++)
 		{
-			if (type instanceof org.eclipse.uml2.uml.Class)
+			org.eclipse.uml2.uml.Class _class = scan.classes.get(i);
+			ModelScan.Multiplicities mult = scan.multiplicities.get(i);
+			switch(scan.stereotypes.get(i))
 			{
-				EList<Stereotype> listStereotypes = type.getAppliedStereotypes();
-				if (listStereotypes.size()==1)
-				{
-					Stereotype stereotype = listStereotypes.get(0);
-					switch(stereotype.getName())
-					{
-					case "Communication Need":
-						correctMultiplicity = multiplicityCN((org.eclipse.uml2.uml.Class)type) & correctMultiplicity;
-						break;
-					case "Message-Passing System":
-						correctMultiplicity = multiplicityMPS((org.eclipse.uml2.uml.Class)type) & correctMultiplicity;
-						break;
-					case "Language Translation":
-						correctMultiplicity = multiplicityLT((org.eclipse.uml2.uml.Class)type) & correctMultiplicity;
-						break;
-					case "Abstract Actor":
-						correctMultiplicity = multiplicityAA((org.eclipse.uml2.uml.Class)type) & correctMultiplicity;
-						break;
-					case "Address":
-						correctMultiplicity = multiplicityAddress((org.eclipse.uml2.uml.Class)type) & correctMultiplicity;
-						break;
-					case "Actor":
-						correctMultiplicity = multiplicityActor((org.eclipse.uml2.uml.Class)type) & correctMultiplicity;
-						break;
-					case "Language":
-						break;
-					case "Reference Language":
-						break;
-					}
-				}
+			case "Communication Need":
+				correctMultiplicity = multiplicityCN(_class, mult) & correctMultiplicity;
+				break;
+			case "Message-Passing System":
+				correctMultiplicity = multiplicityMPS(_class, mult) & correctMultiplicity;
+				break;
+			case "Language Translation":
+				correctMultiplicity = multiplicityLT(_class, mult) & correctMultiplicity;
+				break;
+			case "Abstract Actor":
+				correctMultiplicity = multiplicityAA(_class, mult) & correctMultiplicity;
+				break;
+			case "Address":
+				correctMultiplicity = multiplicityAddress(_class, mult) & correctMultiplicity;
+				break;
+			case "Actor":
+				correctMultiplicity = multiplicityActor(_class, mult) & correctMultiplicity;
+				break;
+			case "Language":
+				break;
+			case "Reference Language":
+				break;
 			}
 		}
-		EList<Package> listPackages = _package.getNestedPackages();
-		for (Package pack : listPackages)
-		{
-			correctMultiplicity = parsePackagesMultiplicity(pack) & correctMultiplicity;
-		}
 		return correctMultiplicity;
 	}
 	
 	protected static void parsePackagesInteroperability(org.eclipse.uml2.uml.Package _package)
 	{
-		EList<Type> listTypes = _package.getOwnedTypes();
-		for (Type type : listTypes)
+		evaluateCommunicationNeeds(collectCommunicationNeeds(ModelScan.scan(_package)));
+	}
+	
+	// Communication Needs of a scan, counted with its elements and classes in the statistics
+	private static EList<org.eclipse.uml2.uml.Class> collectCommunicationNeeds(ModelScan scan)
+	{
+		numElements += scan.numElements;
+		numClasses += scan.numClasses;
+		numCN += scan.communicationNeeds.size();
+		return scan.communicationNeeds;
+	}
+	
+	// Evaluates the Communication Needs in order or, with --threads, concurrently on a ForkJoinPool. Every
+	// Communication Need is evaluated in its own Evaluation, merged in list order either way
+	protected static void evaluateCommunicationNeeds(EList<org.eclipse.uml2.uml.Class> listCN)
+	{
+		if (threads <= 1 || listCN.size() <= 1)
 		{
-			numElements++;
-			if (type instanceof org.eclipse.uml2.uml.Class)
+			openPairResults(getCompiledModel());
+			try
 			{
-				numClasses++;
-				if (type.getAppliedStereotype("RootInteroperability::Communication Need")!=null)
+				for (org.eclipse.uml2.uml.Class cn : listCN)
 				{
-					numCN++;
-					communicationNeedSatisfied((org.eclipse.uml2.uml.Class)type);
-//					// For debugging communication needs independently
-//					if (((org.eclipse.uml2.uml.Class)type).getName().equals("Class Name"))
-//					{
-//						communicationNeedSatisfied((org.eclipse.uml2.uml.Class)type);
-//					}
+					communicationNeedSatisfied(cn);
 				}
 			}
+			finally
+			{
+				clearPairResults();
+			}
+			return;
+		}
+		
+		// Build the index and the compiled model before the workers share them
+		openPairResults(getCompiledModel());
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try
+		{
+			List<ForkJoinTask<Evaluation>> tasks = new ArrayList<ForkJoinTask<Evaluation>>();
+			for (final org.eclipse.uml2.uml.Class cn : listCN)
+			{
+				tasks.add(pool.submit(new Callable<Evaluation>()
+				{
+					@Override
+					public Evaluation call()
+					{
+						return evaluate(cn);
+					}
+				}));
+			}
+			for (ForkJoinTask<Evaluation> task : tasks)
+			{
+				merge(task.join());
+			}
 		}
-		EList<Package> listPackages = _package.getNestedPackages();
-		for (Package pack : listPackages)
+		finally
 		{
-			parsePackagesInteroperability(pack);
+			pool.shutdown();
+			clearPairResults();
 		}
 	}
 	
 	// Returns a list with the classes associated to _class given certain stereotypes and/or member ends
 	protected static EList<org.eclipse.uml2.uml.Class> getAssociations(org.eclipse.uml2.uml.Class _class, String stereotype, String memberEndCurrent, String memberEndTarget)
 	{
+		if (metrics != null)
+		{
+			metrics.associations();
+		}
 		EList<org.eclipse.uml2.uml.Class> classesList = new BasicEList<org.eclipse.uml2.uml.Class>();
 		
+		ModelIndex currentIndex = getIndex();
+		EList<org.eclipse.uml2.uml.Class> indexed = currentIndex != null ? currentIndex.get(_class, stereotype, memberEndCurrent, memberEndTarget) : null;
+		if (indexed != null)
+		{
+			classesList.addAll(indexed);
+			return classesList;
+		}
+		
 		EList<Association> listAssociations = _class.getAssociations();
 		for (Association association : listAssociations)
 		{
@@ -266,101 +763,225 @@ public class interoperability
 		return classesList;
 	}
 	
+	// Same as getAssociations but returns a read-only list, served from the model index when it has been built
+	protected static EList<org.eclipse.uml2.uml.Class> getNeighbors(org.eclipse.uml2.uml.Class _class, String stereotype, String memberEndCurrent, String memberEndTarget)
+	{
+		if (metrics != null)
+		{
+			metrics.neighbors();
+		}
+		ModelIndex currentIndex = getIndex();
+		EList<org.eclipse.uml2.uml.Class> indexed = currentIndex != null ? currentIndex.get(_class, stereotype, memberEndCurrent, memberEndTarget) : null;
+		if (indexed != null)
+		{
+			return indexed;
+		}
+		return getAssociations(_class, stereotype, memberEndCurrent, memberEndTarget);
+	}
+	
+	// Returns the model index, rebuilt if the model has been edited since it was built (null if never built)
+	protected static ModelIndex getIndex()
+	{
+		ModelIndex current = index;
+		if (current != null && current.isStale())
+		{
+			synchronized (interoperability.class)
+			{
+				if (index == current)
+				{
+					index = ModelIndex.build(current.getRoot());
+				}
+				current = index;
+			}
+		}
+		return current;
+	}
+	
+	// Returns the compiled form of the model index used by the path search of Rule 2
+	protected static CompiledModel getCompiledModel()
+	{
+		ModelIndex currentIndex = getIndex();
+		CompiledModel current = compiledModel;
+		if (current == null || current.index != currentIndex)
+		{
+			synchronized (interoperability.class)
+			{
+				if (compiledModel == null || compiledModel.index != currentIndex)
+				{
+					compiledModel = new CompiledModel(currentIndex);
+				}
+				current = compiledModel;
+			}
+		}
+		return current;
+	}
+	
+	// Reads a stereotype attribute of _class. The caches UML2 uses to resolve stereotype applications are
+	// not thread-safe, so concurrent evaluations read them one at a time
+	protected static Object getStereotypeValue(org.eclipse.uml2.uml.Class _class, String stereotype, String property)
+	{
+		synchronized (RESOURCE_SET)
+		{
+			return _class.getValue(_class.getAppliedStereotype(stereotype), property);
+		}
+	}
+	
+	// Stereotypes applied to _class and the values of theirs read by the rules, unsorted. "satisfied" is
+	// written by the rules, not read
+	protected static List<String> getStereotypeSignature(org.eclipse.uml2.uml.Class _class)
+	{
+		List<String> parts = new ArrayList<String>();
+		synchronized (RESOURCE_SET)
+		{
+			for (Stereotype stereotype : _class.getAppliedStereotypes())
+			{
+				parts.add(stereotype.getQualifiedName());
+				for (String property : SIGNATURE_VALUES)
+				{
+					try
+					{
+						parts.add(stereotype.getName() + "." + property + "=" + _class.getValue(stereotype, property));
+					}
+					catch (IllegalArgumentException iae)
+					{
+						// Not a property of this stereotype
+					}
+				}
+			}
+		}
+		return parts;
+	}
+	
+	// Flag of an actor or Message-Passing System, read from the compiled model when it has been built
+	protected static boolean getFlag(org.eclipse.uml2.uml.Class _class, int flag, String stereotype, String property)
+	{
+		CompiledModel model = getIndex() != null ? getCompiledModel() : null;
+		int id = model != null ? model.getNodeId(_class) : -1;
+		if (id >= 0)
+		{
+			return (model.flags[id] & flag) != 0;
+		}
+		return (boolean) getStereotypeValue(_class, stereotype, property);
+	}
+	
+	// Whether a Language Translation is correct, read from the compiled model when it has been built
+	protected static boolean isCorrect(org.eclipse.uml2.uml.Class langTrans)
+	{
+		CompiledModel model = getIndex() != null ? getCompiledModel() : null;
+		int id = model != null ? model.getTranslationId(langTrans) : -1;
+		if (id >= 0)
+		{
+			return model.correct[id];
+		}
+		return (boolean) getStereotypeValue(langTrans, "RootInteroperability::Language Translation", "correct");
+	}
+	
+	// Whether the given stereotype is applied to _class
+	protected static boolean hasStereotype(org.eclipse.uml2.uml.Class _class, String stereotype)
+	{
+		ModelIndex currentIndex = getIndex();
+		if (currentIndex != null)
+		{
+			return currentIndex.hasStereotype(_class, stereotype);
+		}
+		return _class.getAppliedStereotype(stereotype) != null;
+	}
+	
 	
 	//
 	// Multiplicity checks
 	//
 	
-	protected static boolean multiplicityMPS(org.eclipse.uml2.uml.Class _class)
+	protected static boolean multiplicityMPS(org.eclipse.uml2.uml.Class _class, ModelScan.Multiplicities mult)
 	{
-		int multActor = getAssociations(_class, "RootInteroperability::Actor", null, null).size();
-		int multLanguage = getAssociations(_class, "RootInteroperability::Language", null, "format").size();
+		int multActor = mult.actors;
+		int multLanguage = mult.formats;
 		if (multActor >= 2 && multLanguage >= 1)
 		{
-			out("Correct multiplicity for Message-Passing System::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Correct multiplicity for Message-Passing System::%s.", _class.getName());
 			return true;
 		}
 		else
 		{
-			out("Wrong multiplicity for Message-Passing System::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Wrong multiplicity for Message-Passing System::%s.", _class.getName());
 			return false;
 		}
 	}
 	
-	protected static boolean multiplicityCN(org.eclipse.uml2.uml.Class _class)
+	protected static boolean multiplicityCN(org.eclipse.uml2.uml.Class _class, ModelScan.Multiplicities mult)
 	{
-		int multActor = getAssociations(_class, "RootInteroperability::Actor", null, null).size(); 
-		int	multRL = getAssociations(_class, "RootInteroperability::Reference Language", null, null).size() + getAssociations(_class, "RootInteroperability::Language", null, null).size(); 
-		int multCN = getAssociations(_class, "RootInteroperability::Communication Need", "addressingNeed", null).size();
+		int multActor = mult.actors; 
+		int	multRL = mult.referenceLanguages + mult.languages; 
+		int multCN = mult.addressingNeeds;
 		if (multActor >= 2 && multRL == 1 && multCN <= 1)
 		{
-			out("Correct multiplicity for Communication Need::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Correct multiplicity for Communication Need::%s.", _class.getName());
 			return true;
 		}
 		else
 		{
-			out("Wrong multiplicity for Communication Need::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Wrong multiplicity for Communication Need::%s.", _class.getName());
 			return false;
 		}
 	}
 	
-	protected static boolean multiplicityLT(org.eclipse.uml2.uml.Class _class)
+	protected static boolean multiplicityLT(org.eclipse.uml2.uml.Class _class, ModelScan.Multiplicities mult)
 	{
-		int multLanguage = getAssociations(_class, "RootInteroperability::Language", null, null).size();
-		int multActor = getAssociations(_class, "RootInteroperability::Actor", null, null).size();
+		int multLanguage = mult.languages;
+		int multActor = mult.actors;
 		if (multLanguage == 2 && multActor == 1)
 		{
-			out("Correct multiplicity for Language Translation::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Correct multiplicity for Language Translation::%s.", _class.getName());
 			return true;
 		}
 		else
 		{
-			out("Wrong multiplicity for Language Translation::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Wrong multiplicity for Language Translation::%s.", _class.getName());
 			return false;
 		}
 	}
 	
-	protected static boolean multiplicityAA(org.eclipse.uml2.uml.Class _class)
+	protected static boolean multiplicityAA(org.eclipse.uml2.uml.Class _class, ModelScan.Multiplicities mult)
 	{
-		int multLanguage = getAssociations(_class, "RootInteroperability::Language", null, null).size();
+		int multLanguage = mult.languages;
 		if (multLanguage >= 1)
 		{
-			out("Correct multiplicity for Abstract Actor::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Correct multiplicity for Abstract Actor::%s.", _class.getName());
 			return true;
 		}
 		else
 		{
-			out("Wrong multiplicity for Abstract Actor::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Wrong multiplicity for Abstract Actor::%s.", _class.getName());
 			return false;
 		}
 	}
 	
-	protected static boolean multiplicityAddress(org.eclipse.uml2.uml.Class _class)
+	protected static boolean multiplicityAddress(org.eclipse.uml2.uml.Class _class, ModelScan.Multiplicities mult)
 	{
-		int multActor = getAssociations(_class, "RootInteroperability::Actor", "identifier", null).size();
+		int multActor = mult.identifiers;
 		if (multActor == 1)
 		{
-			out("Correct multiplicity for Address::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Correct multiplicity for Address::%s.", _class.getName());
 			return true;
 		}
 		else
 		{
-			out("Wrong multiplicity for Address::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Wrong multiplicity for Address::%s.", _class.getName());
 			return false;
 		}
 	}
 	
-	protected static boolean multiplicityActor(org.eclipse.uml2.uml.Class _class)
+	protected static boolean multiplicityActor(org.eclipse.uml2.uml.Class _class, ModelScan.Multiplicities mult)
 	{
-		int multLanguage = getAssociations(_class, "RootInteroperability::Language", null, null).size();
+		int multLanguage = mult.languages;
 		if (multLanguage >= 1)
 		{
-			out("Correct multiplicity for Actor::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Correct multiplicity for Actor::%s.", _class.getName());
 			return true;
 		}
 		else
 		{
-			out("Wrong multiplicity for Actor::%s.", _class.getName());
+			out(Category.MULTIPLICITY, "Wrong multiplicity for Actor::%s.", _class.getName());
 			return false;
 		}
 	}
@@ -370,240 +991,2377 @@ public class interoperability
 	// Interoperability rules
 	//
 	
-	// Rule 1
-	protected static boolean communicationNeedSatisfied(org.eclipse.uml2.uml.Class cn)
+	// Search used by Rule 2: path enumeration, reachability over (actor, allowed languages) states, path
+	// enumeration cross-checked against reachability, the bestPaths best paths by pathCost, or reachability
+	// searched from both actors
+	private enum Engine
 	{
-		boolean satisfied = false;
-		int i = 0, j;
-		EList<org.eclipse.uml2.uml.Class> cnActors = getAssociations(cn, "RootInteroperability::Actor", null, null);
-		EList<org.eclipse.uml2.uml.Class> emptyList1 = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> emptyList2 = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> act1Languages = new BasicEList<org.eclipse.uml2.uml.Class>();
+		DFS, BFS, CHECK, BEST, BIDIRECTIONAL
+	}
+	
+	// Cost of a hop for the BEST engine, given the allowed languages before and after it. Costs must not be
+	// negative, so that extending a path never makes it cheaper
+	private enum PathCost
+	{
+		// Fewest hops
+		HOPS
+		{
+			@Override
+			long cost(CompiledModel model, int currActor, int mps, int nextActor, BitSet allowed, BitSet nextAllowed)
+			{
+				return HOP_COST;
+			}
+		},
+		// Fewest hops that need a Language Translation (no allowed language carried over), then fewest hops
+		TRANSLATIONS
+		{
+			@Override
+			long cost(CompiledModel model, int currActor, int mps, int nextActor, BitSet allowed, BitSet nextAllowed)
+			{
+				return allowed.intersects(nextAllowed) ? HOP_COST : AVOIDED_HOP_COST;
+			}
+		},
+		// Fewest Message-Passing Systems that are not fixed, then fewest hops
+		FIXED
+		{
+			@Override
+			long cost(CompiledModel model, int currActor, int mps, int nextActor, BitSet allowed, BitSet nextAllowed)
+			{
+				return (model.flags[mps] & CompiledModel.FIXED) != 0 ? HOP_COST : AVOIDED_HOP_COST;
+			}
+		};
 		
-		out("Communication Need: %s", cn.getName());
-		out("------------------------------------");
+		abstract long cost(CompiledModel model, int currActor, int mps, int nextActor, BitSet allowed, BitSet nextAllowed);
+	}
+	
+	// State of the evaluation of one top-level Communication Need (and of the sub Communication Needs it
+	// evaluates). Results are buffered here and merged into the global output and statistics by merge()
+	private static class Evaluation
+	{
+		private boolean flagLanguage = true;
+		private boolean flagAddress = true;
+		private boolean satisfied = false;
+		private int numCNSatisfied = 0;
+		private int numCNInconclusive = 0;
+		private int numSubCNTotal = 0;
+		private final List<LogSink.Message> output = new ArrayList<LogSink.Message>();
+		private Set<org.eclipse.uml2.uml.Class> actors = new HashSet<org.eclipse.uml2.uml.Class>();
+		private Set<org.eclipse.uml2.uml.Class> mps = new HashSet<org.eclipse.uml2.uml.Class>();
+		private Set<org.eclipse.uml2.uml.Class> lang = new HashSet<org.eclipse.uml2.uml.Class>();
+		// Rows of cntable.txt (Communication Need, initial actor, final actor), numbered from 1
+		private final List<String[]> cnTable = new ArrayList<String[]>();
+		private final List<GraphHop> graphHops = new ArrayList<GraphHop>();
+		private final EList<org.eclipse.uml2.uml.Class> satisfiedCN = new BasicEList<org.eclipse.uml2.uml.Class>();
+		// Results of the sub Communication Needs already evaluated, indexed by the flags they were evaluated with
+		private final Map<org.eclipse.uml2.uml.Class, Boolean[]> subCNResults = new HashMap<org.eclipse.uml2.uml.Class, Boolean[]>();
+		// Communication Needs being evaluated, outermost first, and the outermost one a cycle went back to
+		private final List<org.eclipse.uml2.uml.Class> cnStack = new ArrayList<org.eclipse.uml2.uml.Class>();
+		private int cycleDepth = Integer.MAX_VALUE;
+		// Communication Needs evaluated, the top-level one and its sub Communication Needs, and node ids of the
+		// actors expanded by the path search, that the results depend on
+		private final Set<org.eclipse.uml2.uml.Class> needs = new LinkedHashSet<org.eclipse.uml2.uml.Class>();
+		private BitSet expanded = new BitSet();
+		// Calls to subCommunicationNeedSatisfied, to tell the pair searches that depend on this Evaluation
+		private int subCNCalls = 0;
+		// Budget: states expanded, end (System.nanoTime()) if any, whether it ran out and the number of times
+		// the search was cut short, by the budget or the hop limit
+		private long states = 0;
+		private final long deadline;
+		private boolean outOfBudget = false;
+		private int truncations = 0;
+		// Whether the results were taken from the result cache
+		private boolean cached = false;
+		
+		private Evaluation()
+		{
+			long now = System.nanoTime();
+			long end = cnTime > 0 ? now + cnTime * 1000000 : 0;
+			if (runDeadline != 0 && (end == 0 || end - runDeadline > 0))
+			{
+				end = runDeadline;
+			}
+			deadline = end;
+			outOfBudget = deadline != 0 && now - deadline >= 0;
+		}
+		
+		// Counts one more state expanded by the path search, and returns whether the budget has run out. The
+		// clock is read every 256 states
+		private boolean exhausted()
+		{
+			if (!outOfBudget)
+			{
+				states++;
+				outOfBudget = states > maxStates || (deadline != 0 && (states & 0xFF) == 0 && System.nanoTime() - deadline >= 0);
+			}
+			if (outOfBudget)
+			{
+				truncations++;
+			}
+			return outOfBudget;
+		}
+	}
+	
+	// Sub Communication Need of the interoperability graph, labelled with the local number of its Communication Need
+	private static class GraphHop
+	{
+		private final org.eclipse.uml2.uml.Class cn;
+		private final org.eclipse.uml2.uml.Class actor;
+		private final org.eclipse.uml2.uml.Class mps;
+		private final org.eclipse.uml2.uml.Class nextActor;
+		private final int label;
+		
+		private GraphHop(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class actor, org.eclipse.uml2.uml.Class mps, org.eclipse.uml2.uml.Class nextActor, int label)
+		{
+			this.cn = cn;
+			this.actor = actor;
+			this.mps = mps;
+			this.nextActor = nextActor;
+			this.label = label;
+		}
+	}
+	
+	// Evaluation of the calling thread, or a detached one when none is running
+	private static Evaluation currentEvaluation()
+	{
+		Evaluation e = evaluation.get();
+		return e != null ? e : new Evaluation();
+	}
+	
+	// Evaluates a top-level Communication Need in a new Evaluation on the calling thread, or takes its results
+	// from the result cache when its neighbourhood is unchanged
+	protected static Evaluation evaluate(org.eclipse.uml2.uml.Class cn)
+	{
+		ResultCache.Fingerprint fingerprint = null;
+		if (resultCache != null)
+		{
+			ModelIndex modelIndex = getIndex();
+			synchronized (RESOURCE_SET)
+			{
+				fingerprint = modelIndex != null ? resultCache.fingerprint(cn, modelIndex, cacheSettings()) : null;
+			}
+			ResultCache.Entry entry = fingerprint != null ? resultCache.get(fingerprint.key) : null;
+			Evaluation e = entry != null ? restore(cn, entry, fingerprint.classes) : null;
+			if (e != null)
+			{
+				return e;
+			}
+		}
+		
+		Evaluation e = new Evaluation();
+		evaluation.set(e);
+		e.cnStack.add(cn);
+		try
+		{
+			e.satisfied = communicationNeedSatisfied(cn);
+		}
+		finally
+		{
+			evaluation.remove();
+		}
+		// Results cut short by a time budget depend on the machine and the load
+		if (fingerprint != null && !(e.outOfBudget && (cnTime > 0 || runDeadline != 0)))
+		{
+			resultCache.put(fingerprint.key, store(e));
+		}
+		return e;
+	}
+	
+	// Settings of the run the results of a Communication Need depend on. The hops of the interoperability
+	// graph are only recorded when it is drawn
+	private static String cacheSettings()
+	{
+		StringBuilder settings = new StringBuilder();
+		settings.append(engine).append(',').append(bestPaths).append(',').append(pathCost).append(',').append(maxHops).append(',').append(maxStates).append(',').append(drawGraph);
+		for (Category category : Category.values())
+		{
+			settings.append(',').append(LogSink.isEnabled(category, Level.INFO));
+		}
+		return settings.toString();
+	}
+	
+	// Entry of the result cache with the results of an Evaluation
+	private static ResultCache.Entry store(Evaluation e)
+	{
+		ResultCache.Entry entry = new ResultCache.Entry();
+		entry.satisfied = e.satisfied;
+		entry.numCNSatisfied = e.numCNSatisfied;
+		entry.numCNInconclusive = e.numCNInconclusive;
+		entry.numSubCNTotal = e.numSubCNTotal;
+		entry.truncations = e.truncations;
+		entry.output = new String[e.output.size()];
+		for (int i = 0; i < entry.output.length; i++)
+		{
+			entry.output[i] = e.output.get(i).getLine();
+		}
+		entry.actors = qualifiedNames(e.actors);
+		entry.mps = qualifiedNames(e.mps);
+		entry.lang = qualifiedNames(e.lang);
+		entry.satisfiedCN = qualifiedNames(e.satisfiedCN);
+		entry.needs = qualifiedNames(e.needs);
+		List<org.eclipse.uml2.uml.Class> expanded = new ArrayList<org.eclipse.uml2.uml.Class>();
+		CompiledModel model = e.expanded.isEmpty() ? null : getCompiledModel();
+		for (int id = e.expanded.nextSetBit(0); id >= 0; id = e.expanded.nextSetBit(id + 1))
+		{
+			expanded.add(model.nodes[id]);
+		}
+		entry.expanded = qualifiedNames(expanded);
+		entry.cnTable = e.cnTable.toArray(new String[e.cnTable.size()][]);
+		entry.graphHops = new String[e.graphHops.size()][];
+		entry.hopLabels = new int[e.graphHops.size()];
+		for (int i = 0; i < entry.graphHops.length; i++)
+		{
+			GraphHop hop = e.graphHops.get(i);
+			entry.graphHops[i] = qualifiedNames(Arrays.asList(hop.cn, hop.actor, hop.mps, hop.nextActor));
+			entry.hopLabels[i] = hop.label;
+		}
+		return entry;
+	}
+	
+	// Evaluation of cn with the results of an entry of the result cache, whose classes are looked up in
+	// classes by qualified name, or null if one is not found
+	private static Evaluation restore(org.eclipse.uml2.uml.Class cn, ResultCache.Entry entry, Map<String, org.eclipse.uml2.uml.Class> classes)
+	{
+		Evaluation e = new Evaluation();
+		e.cached = true;
+		e.cnStack.add(cn);
+		e.satisfied = entry.satisfied;
+		e.numCNSatisfied = entry.numCNSatisfied;
+		e.numCNInconclusive = entry.numCNInconclusive;
+		e.numSubCNTotal = entry.numSubCNTotal;
+		e.truncations = entry.truncations;
+		for (String line : entry.output)
+		{
+			e.output.add(new LogSink.Message(Level.INFO, "%s%n", new Object[] {line}));
+		}
+		List<org.eclipse.uml2.uml.Class> expanded = new ArrayList<org.eclipse.uml2.uml.Class>();
+		if (!lookUp(entry.actors, classes, e.actors) || !lookUp(entry.mps, classes, e.mps) || !lookUp(entry.lang, classes, e.lang) || !lookUp(entry.satisfiedCN, classes, e.satisfiedCN) || !lookUp(entry.needs, classes, e.needs) || !lookUp(entry.expanded, classes, expanded))
+		{
+			return null;
+		}
+		CompiledModel model = expanded.isEmpty() ? null : getCompiledModel();
+		for (org.eclipse.uml2.uml.Class node : expanded)
+		{
+			int id = model.getNodeId(node);
+			if (id < 0)
+			{
+				return null;
+			}
+			e.expanded.set(id);
+		}
+		e.cnTable.addAll(Arrays.asList(entry.cnTable));
+		for (int i = 0; i < entry.graphHops.length; i++)
+		{
+			List<org.eclipse.uml2.uml.Class> hop = new ArrayList<org.eclipse.uml2.uml.Class>();
+			if (!lookUp(entry.graphHops[i], classes, hop))
+			{
+				return null;
+			}
+			e.graphHops.add(new GraphHop(hop.get(0), hop.get(1), hop.get(2), hop.get(3), entry.hopLabels[i]));
+		}
+		return e;
+	}
+	
+	private static String[] qualifiedNames(Collection<org.eclipse.uml2.uml.Class> classes)
+	{
+		String[] names = new String[classes.size()];
+		int i = 0;
+		for (org.eclipse.uml2.uml.Class _class : classes)
+		{
+			names[i++] = _class.getQualifiedName();
+		}
+		return names;
+	}
+	
+	private static boolean lookUp(String[] names, Map<String, org.eclipse.uml2.uml.Class> classes, Collection<org.eclipse.uml2.uml.Class> found)
+	{
+		for (String name : names)
+		{
+			org.eclipse.uml2.uml.Class _class = classes.get(name);
+			if (_class == null)
+			{
+				return false;
+			}
+			found.add(_class);
+		}
+		return true;
+	}
+	
+	// Adds the results of an Evaluation to the output, cntable.txt, the interoperability graph, the statistics and the model
+	protected static void merge(Evaluation e)
+	{
+		for (LogSink.Message message : e.output)
+		{
+			write(message);
+		}
+		for (int k = 0; k < e.cnTable.size(); k++)
+		{
+			String[] row = e.cnTable.get(k);
+			writerCN.printf("%d & %s & %s & %s \\\\", numCNSatisfied + k + 1, row[0], row[1], row[2]);
+			writerCN.println();
+			writerCN.printf("\\hline");
+			writerCN.println();
+		}
+		for (GraphHop hop : e.graphHops)
+		{
+			addGraphHop(hop, numCNSatisfied + hop.label);
+		}
+		mergeStatistics(e);
+		synchronized (RESOURCE_SET)
+		{
+			for (org.eclipse.uml2.uml.Class cn : e.satisfiedCN)
+			{
+				cn.setValue(cn.getAppliedStereotype("RootInteroperability::Communication Need"), "satisfied", true);
+			}
+		}
+		if (incremental != null)
+		{
+			incremental.record(e);
+		}
+	}
+	
+	// Adds the statistics of an Evaluation
+	private static void mergeStatistics(Evaluation e)
+	{
+		for (org.eclipse.uml2.uml.Class _class : e.actors)
+		{
+			if (!actors_stats.contains(_class))
+			{
+				actors_stats.add(_class);
+			}
+		}
+		for (org.eclipse.uml2.uml.Class _class : e.mps)
+		{
+			if (!mps_stats.contains(_class))
+			{
+				mps_stats.add(_class);
+			}
+		}
+		for (org.eclipse.uml2.uml.Class _class : e.lang)
+		{
+			if (!lang_stats.contains(_class))
+			{
+				lang_stats.add(_class);
+			}
+		}
+		numCNSatisfied += e.numCNSatisfied;
+		numCNInconclusive += e.numCNInconclusive;
+		numSubCNTotal += e.numSubCNTotal;
+		if (resultCache != null)
+		{
+			if (e.cached)
+			{
+				numCacheHits++;
+			}
+			else
+			{
+				numCacheMisses++;
+			}
+		}
+	}
+	
+	// Starts recording the changes of model, whose top-level Communication Needs are then recorded as they
+	// are evaluated, so that reevaluateChanges() can evaluate again those the changes affect
+	protected static void trackChanges(Model model)
+	{
+		if (incremental != null)
+		{
+			incremental.close();
+		}
+		incremental = new Incremental(model);
+	}
+	
+	// Evaluates again the top-level Communication Needs affected by the changes of the model since the last
+	// evaluation, and the ones added, and reports them with the verdicts that changed. The "satisfied" values
+	// and the statistics are updated in place. Returns the number of Communication Needs evaluated again
+	protected static int reevaluateChanges()
+	{
+		if (incremental == null)
+		{
+			return 0;
+		}
+		Set<org.eclipse.uml2.uml.Class> touched = incremental.drain();
+		if (touched.isEmpty())
+		{
+			return 0;
+		}
+		return reevaluate(Incremental.scope(touched, incremental.index, getIndex()));
+	}
+	
+	// Evaluates again the top-level Communication Needs whose results depend on a class of scope, and the
+	// ones added
+	private static int reevaluate(Set<org.eclipse.uml2.uml.Class> scope)
+	{
+		ModelIndex current = getIndex();
+		ModelScan scan = ModelScan.scan(incremental.model);
+		
+		EList<org.eclipse.uml2.uml.Class> affected = new BasicEList<org.eclipse.uml2.uml.Class>();
+		for (org.eclipse.uml2.uml.Class cn : scan.communicationNeeds)
+		{
+			Set<org.eclipse.uml2.uml.Class> dependencies = incremental.dependencies.get(cn);
+			if (dependencies == null || !Collections.disjoint(dependencies, scope))
+			{
+				affected.add(cn);
+			}
+		}
+		Map<org.eclipse.uml2.uml.Class, Evaluation> previousResults = new LinkedHashMap<org.eclipse.uml2.uml.Class, Evaluation>(incremental.results);
+		incremental.results.keySet().retainAll(scan.communicationNeeds);
+		incremental.dependencies.keySet().retainAll(scan.communicationNeeds);
+		
+		banner("Interoperability rules checks (%d of %d Communication Needs affected by the changes).", affected.size(), scan.communicationNeeds.size());
+		out("");
+		out("");
+		List<String> changes = new ArrayList<String>();
+		openPairResults(getCompiledModel());
+		for (org.eclipse.uml2.uml.Class cn : affected)
+		{
+			Evaluation e = evaluate(cn);
+			for (LogSink.Message message : e.output)
+			{
+				write(message);
+			}
+			Evaluation before = previousResults.get(cn);
+			if (before == null)
+			{
+				changes.add(String.format("Communication Need::%s --> %s (new)", cn.getName(), e.satisfied ? "Satisfied" : "Not satisfied"));
+			}
+			else if (before.satisfied != e.satisfied)
+			{
+				changes.add(String.format("Communication Need::%s --> %s (was %s)", cn.getName(), e.satisfied ? "Satisfied" : "Not satisfied", before.satisfied ? "satisfied" : "not satisfied"));
+			}
+			incremental.record(e);
+		}
+		clearPairResults();
+		for (org.eclipse.uml2.uml.Class cn : previousResults.keySet())
+		{
+			if (!incremental.results.containsKey(cn))
+			{
+				changes.add(String.format("Communication Need::%s --> Removed", cn.getName()));
+			}
+		}
+		out("");
+		banner("Changes.");
+		for (String change : changes)
+		{
+			out(change);
+		}
 		out("");
 		
-		for (org.eclipse.uml2.uml.Class act1 : cnActors)
+		// "satisfied" values: the Communication Needs satisfied in an Evaluation are the satisfied ones now
+		Set<org.eclipse.uml2.uml.Class> satisfiedNow = new HashSet<org.eclipse.uml2.uml.Class>();
+		for (Evaluation e : incremental.results.values())
+		{
+			satisfiedNow.addAll(e.satisfiedCN);
+		}
+		synchronized (RESOURCE_SET)
+		{
+			for (org.eclipse.uml2.uml.Class cn : scan.communicationNeeds)
+			{
+				Boolean satisfied = satisfiedNow.contains(cn);
+				if (!satisfied.equals(getStereotypeValue(cn, "RootInteroperability::Communication Need", "satisfied")))
+				{
+					cn.setValue(cn.getAppliedStereotype("RootInteroperability::Communication Need"), "satisfied", satisfied);
+				}
+			}
+		}
+		
+		reset();
+		collectCommunicationNeeds(scan);
+		for (org.eclipse.uml2.uml.Class cn : scan.communicationNeeds)
+		{
+			mergeStatistics(incremental.results.get(cn));
+		}
+		printStatistics();
+		incremental.index = current;
+		return affected.size();
+	}
+	
+	// Watch mode: evaluates the model file again each time it is saved, until interrupted. Only its resource is
+	// reloaded, and only the Communication Needs that the differences with the previous version affect are
+	// evaluated again
+	private static void watch(File modelFile, Model model)
+	
+	throws IOException
+	{
+		// The model file, as save() does not change the URI of the resource
+		URI uri = model.eResource().getURI();
+		Map<String, org.eclipse.uml2.uml.Class> classes = Incremental.classesByName(model);
+		Map<String, String> signatures = Incremental.signatures(classes);
+		// The log is only written to results.txt when closed, on exit
+		Runtime.getRuntime().addShutdownHook(new Thread()
+		{
+			@Override
+			public void run()
+			{
+				if (log != null)
+				{
+					closeLog();
+				}
+			}
+		});
+		WatchService watcher = FileSystems.getDefault().newWatchService();
+		modelFile.getParentFile().toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+		out("Watching %s.", modelFile);
+		try
+		{
+			while (true)
+			{
+				WatchKey key = watcher.take();
+				boolean changed = false;
+				for (WatchEvent<?> event : key.pollEvents())
+				{
+					changed |= modelFile.getName().equals(String.valueOf(event.context()));
+				}
+				key.reset();
+				if (!changed)
+				{
+					continue;
+				}
+				// A save may take several writes: wait until the file has not changed for WATCH_DELAY
+				while ((key = watcher.poll(WATCH_DELAY, TimeUnit.MILLISECONDS)) != null)
+				{
+					key.pollEvents();
+					key.reset();
+				}
+				
+				long start = System.nanoTime();
+				Model next;
+				synchronized (RESOURCE_SET)
+				{
+					Resource resource = RESOURCE_SET.getResource(uri, false);
+					if (resource != null)
+					{
+						resource.unload();
+						RESOURCE_SET.getResources().remove(resource);
+					}
+					try
+					{
+						resource = RESOURCE_SET.getResource(uri, true);
+						next = (Model) EcoreUtil.getObjectByType(resource.getContents(), UMLPackage.Literals.MODEL);
+					}
+					catch (WrappedException we)
+					{
+						next = null;
+					}
+					if (next == null)
+					{
+						resource = RESOURCE_SET.getResource(uri, false);
+						if (resource != null)
+						{
+							resource.unload();
+							RESOURCE_SET.getResources().remove(resource);
+						}
+					}
+				}
+				if (next == null)
+				{
+					err("Cannot load %s, waiting for the next change.", modelFile);
+					continue;
+				}
+				
+				// Classes whose qualified name, stereotypes, stereotype values or associations changed, in the
+				// previous version and in this one
+				Map<String, org.eclipse.uml2.uml.Class> nextClasses = Incremental.classesByName(next);
+				Map<String, String> nextSignatures = Incremental.signatures(nextClasses);
+				Set<org.eclipse.uml2.uml.Class> removed = new HashSet<org.eclipse.uml2.uml.Class>();
+				Set<org.eclipse.uml2.uml.Class> added = new HashSet<org.eclipse.uml2.uml.Class>();
+				Set<String> names = new HashSet<String>(signatures.keySet());
+				names.addAll(nextSignatures.keySet());
+				int numChanged = 0;
+				for (String name : names)
+				{
+					if (!Objects.equals(signatures.get(name), nextSignatures.get(name)))
+					{
+						numChanged++;
+						if (classes.containsKey(name))
+						{
+							removed.add(classes.get(name));
+						}
+						if (nextClasses.containsKey(name))
+						{
+							added.add(nextClasses.get(name));
+						}
+					}
+				}
+				Map<org.eclipse.uml2.uml.Class, String> previousNames = new HashMap<org.eclipse.uml2.uml.Class, String>();
+				for (Map.Entry<String, org.eclipse.uml2.uml.Class> entry : classes.entrySet())
+				{
+					previousNames.put(entry.getValue(), entry.getKey());
+				}
+				Set<org.eclipse.uml2.uml.Class> scope = new HashSet<org.eclipse.uml2.uml.Class>();
+				for (org.eclipse.uml2.uml.Class _class : Incremental.scope(removed, incremental.index, null))
+				{
+					org.eclipse.uml2.uml.Class nextClass = nextClasses.get(previousNames.get(_class));
+					if (nextClass != null)
+					{
+						scope.add(nextClass);
+					}
+				}
+				
+				index = ModelIndex.build(next);
+				compiledModel = null;
+				incremental = incremental.moveTo(next, previousNames, nextClasses);
+				scope.addAll(Incremental.scope(added, null, index));
+				banner("Model changed: %d classes differ.", numChanged);
+				reevaluate(scope);
+				// Changes are found by diffing versions, not recorded
+				incremental.drain();
+				out("Evaluated again in %d ms.", (System.nanoTime() - start) / 1000000);
+				out("");
+				save(next, URI.createFileURI(outputDir.getAbsolutePath()).appendSegment("savedmodel").appendFileExtension(UMLResource.FILE_EXTENSION));
+				writeCache();
+				classes = nextClasses;
+				signatures = nextSignatures;
+			}
+		}
+		catch (InterruptedException ie)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			watcher.close();
+		}
+	}
+	
+	// Incremental evaluation: the Evaluation of each top-level Communication Need with the classes its
+	// result depends on, and the classes touched by the changes of the model since the last evaluation. A
+	// Communication Need depends on itself, its sub Communication Needs and their actors, the actors its path
+	// searches expanded, their Message-Passing Systems and the actors of these. A change affects it when one
+	// of these classes is in the scope of the change (see scope())
+	private static class Incremental
+	{
+		private final Model model;
+		private final Notifier observed;
+		private final EContentAdapter recorder;
+		private final Set<org.eclipse.uml2.uml.Class> touched = new LinkedHashSet<org.eclipse.uml2.uml.Class>();
+		private final Map<org.eclipse.uml2.uml.Class, Evaluation> results = new LinkedHashMap<org.eclipse.uml2.uml.Class, Evaluation>();
+		private final Map<org.eclipse.uml2.uml.Class, Set<org.eclipse.uml2.uml.Class>> dependencies = new HashMap<org.eclipse.uml2.uml.Class, Set<org.eclipse.uml2.uml.Class>>();
+		// Index the recorded results were evaluated with
+		private ModelIndex index;
+		
+		private Incremental(Model model)
+		{
+			this.model = model;
+			this.index = getIndex();
+			this.observed = model.eResource() != null ? model.eResource() : model;
+			this.recorder = new EContentAdapter()
+			{
+				@Override
+				public void notifyChanged(Notification notification)
+				{
+					super.notifyChanged(notification);
+					if (!notification.isTouch() && notification.getEventType() != Notification.REMOVING_ADAPTER && !ModelIndex.isResultValue(notification.getFeature()))
+					{
+						touch(notification.getNotifier());
+						touch(notification.getOldValue());
+						touch(notification.getNewValue());
+					}
+				}
+			};
+			observed.eAdapters().add(recorder);
+		}
+		
+		private void close()
+		{
+			observed.eAdapters().remove(recorder);
+		}
+		
+		// Incremental evaluation of next, another version of the model, with the results of this one for the
+		// Communication Needs with the same qualified name. The classes of this version are mapped to the
+		// classes of next through their qualified names (names and nextClasses)
+		private Incremental moveTo(Model next, Map<org.eclipse.uml2.uml.Class, String> names, Map<String, org.eclipse.uml2.uml.Class> nextClasses)
 		{
-			act1Languages = getAssociations(act1, "RootInteroperability::Language", null, null);
-			j = 0;
-			for (org.eclipse.uml2.uml.Class act2 : cnActors)
+			close();
+			Incremental moved = new Incremental(next);
+			for (Map.Entry<org.eclipse.uml2.uml.Class, Evaluation> entry : results.entrySet())
+			{
+				org.eclipse.uml2.uml.Class cn = nextClasses.get(names.get(entry.getKey()));
+				if (cn == null)
+				{
+					continue;
+				}
+				Evaluation e = entry.getValue();
+				moveTo(e.actors, names, nextClasses);
+				moveTo(e.mps, names, nextClasses);
+				moveTo(e.lang, names, nextClasses);
+				moveTo(e.satisfiedCN, names, nextClasses);
+				Set<org.eclipse.uml2.uml.Class> classes = new HashSet<org.eclipse.uml2.uml.Class>(dependencies.get(entry.getKey()));
+				moveTo(classes, names, nextClasses);
+				moved.results.put(cn, e);
+				moved.dependencies.put(cn, classes);
+			}
+			return moved;
+		}
+		
+		private static void moveTo(Collection<org.eclipse.uml2.uml.Class> classes, Map<org.eclipse.uml2.uml.Class, String> names, Map<String, org.eclipse.uml2.uml.Class> nextClasses)
+		{
+			List<org.eclipse.uml2.uml.Class> previous = new ArrayList<org.eclipse.uml2.uml.Class>(classes);
+			classes.clear();
+			for (org.eclipse.uml2.uml.Class _class : previous)
+			{
+				org.eclipse.uml2.uml.Class nextClass = nextClasses.get(names.get(_class));
+				if (nextClass != null)
+				{
+					classes.add(nextClass);
+				}
+			}
+		}
+		
+		// Classes of the model (and nested packages) by qualified name
+		private static Map<String, org.eclipse.uml2.uml.Class> classesByName(org.eclipse.uml2.uml.Package _package)
+		{
+			Map<String, org.eclipse.uml2.uml.Class> classes = new LinkedHashMap<String, org.eclipse.uml2.uml.Class>();
+			collectClasses(_package, classes);
+			return classes;
+		}
+		
+		private static void collectClasses(org.eclipse.uml2.uml.Package _package, Map<String, org.eclipse.uml2.uml.Class> classes)
+		{
+			for (Type type : _package.getOwnedTypes())
+			{
+				if (type instanceof org.eclipse.uml2.uml.Class)
+				{
+					classes.put(type.getQualifiedName(), (org.eclipse.uml2.uml.Class) type);
+				}
+			}
+			for (Package pack : _package.getNestedPackages())
+			{
+				collectClasses(pack, classes);
+			}
+		}
+		
+		// What the rules read of each class, by qualified name: its stereotypes, their values but "satisfied",
+		// and the roles and qualified names of the ends of its associations
+		private static Map<String, String> signatures(Map<String, org.eclipse.uml2.uml.Class> classes)
+		{
+			Map<String, String> signatures = new HashMap<String, String>();
+			for (Map.Entry<String, org.eclipse.uml2.uml.Class> entry : classes.entrySet())
+			{
+				org.eclipse.uml2.uml.Class _class = entry.getValue();
+				List<String> parts = getStereotypeSignature(_class);
+				for (Association association : _class.getAssociations())
+				{
+					for (Property memberEnd : association.getMemberEnds())
+					{
+						parts.add(memberEnd.getName() + ":" + (memberEnd.getType() != null ? memberEnd.getType().getQualifiedName() : null));
+					}
+				}
+				Collections.sort(parts);
+				signatures.put(entry.getKey(), parts.toString());
+			}
+			return signatures;
+		}
+		
+		// Classes touched by a change of value: the class (or the class a stereotype application, property or
+		// other element belongs to) and, for an association, its end types
+		private void touch(Object value)
+		{
+			if (value instanceof Iterable)
+			{
+				for (Object element : (Iterable<?>) value)
+				{
+					touch(element);
+				}
+				return;
+			}
+			if (!(value instanceof EObject))
+			{
+				return;
+			}
+			EObject object = (EObject) value;
+			if (!(object instanceof Element))
+			{
+				object = UMLUtil.getBaseElement(object);
+			}
+			if (object instanceof Property && ((Property) object).getType() instanceof org.eclipse.uml2.uml.Class)
+			{
+				add((org.eclipse.uml2.uml.Class) ((Property) object).getType());
+			}
+			while (object != null && !(object instanceof org.eclipse.uml2.uml.Class) && !(object instanceof Association))
+			{
+				object = object.eContainer();
+			}
+			if (object instanceof Association)
+			{
+				for (Type endType : ((Association) object).getEndTypes())
+				{
+					if (endType instanceof org.eclipse.uml2.uml.Class)
+					{
+						add((org.eclipse.uml2.uml.Class) endType);
+					}
+				}
+			}
+			else if (object instanceof org.eclipse.uml2.uml.Class)
+			{
+				add((org.eclipse.uml2.uml.Class) object);
+			}
+		}
+		
+		private synchronized void add(org.eclipse.uml2.uml.Class _class)
+		{
+			touched.add(_class);
+		}
+		
+		// Classes touched since the last call
+		private synchronized Set<org.eclipse.uml2.uml.Class> drain()
+		{
+			Set<org.eclipse.uml2.uml.Class> classes = new LinkedHashSet<org.eclipse.uml2.uml.Class>(touched);
+			touched.clear();
+			return classes;
+		}
+		
+		// Records the Evaluation of a top-level Communication Need and the classes its result depends on
+		private void record(Evaluation e)
+		{
+			org.eclipse.uml2.uml.Class cn = e.cnStack.get(0);
+			CompiledModel compiled = getCompiledModel();
+			Set<org.eclipse.uml2.uml.Class> classes = new HashSet<org.eclipse.uml2.uml.Class>();
+			classes.add(cn);
+			for (org.eclipse.uml2.uml.Class need : e.needs)
+			{
+				classes.add(need);
+				classes.addAll(getNeighbors(need, "RootInteroperability::Actor", null, null));
+			}
+			for (int actor = e.expanded.nextSetBit(0); actor >= 0; actor = e.expanded.nextSetBit(actor + 1))
+			{
+				classes.add(compiled.nodes[actor]);
+				for (org.eclipse.uml2.uml.Class mps : getNeighbors(compiled.nodes[actor], "RootInteroperability::Message-Passing System", null, null))
+				{
+					classes.add(mps);
+					classes.addAll(getNeighbors(mps, "RootInteroperability::Actor", null, null));
+				}
+			}
+			results.put(cn, e);
+			dependencies.put(cn, classes);
+		}
+		
+		// Classes whose results the touched classes may change: the touched classes and the classes associated
+		// to them before or after the changes and, for a language, the languages whose super or carrying
+		// languages include it or that are included in its own, with the classes associated to these
+		private static Set<org.eclipse.uml2.uml.Class> scope(Set<org.eclipse.uml2.uml.Class> touched, ModelIndex previous, ModelIndex current)
+		{
+			Set<org.eclipse.uml2.uml.Class> scope = new HashSet<org.eclipse.uml2.uml.Class>(touched);
+			for (ModelIndex index : new ModelIndex[] {previous, current})
+			{
+				if (index == null)
+				{
+					continue;
+				}
+				Set<org.eclipse.uml2.uml.Class> classes = new LinkedHashSet<org.eclipse.uml2.uml.Class>(touched);
+				for (org.eclipse.uml2.uml.Class _class : touched)
+				{
+					int id = index.getLanguageId(_class);
+					if (id < 0)
+					{
+						continue;
+					}
+					for (int lang = 0; lang < index.getLanguageCount(); lang++)
+					{
+						if (index.getSuperLanguages(lang).get(id) || index.getCarryingLanguages(lang).get(id) || index.getSuperLanguages(id).get(lang) || index.getCarryingLanguages(id).get(lang))
+						{
+							classes.add(index.getLanguage(lang));
+						}
+					}
+				}
+				for (org.eclipse.uml2.uml.Class _class : classes)
+				{
+					scope.add(_class);
+					EList<org.eclipse.uml2.uml.Class> neighbors = index.get(_class, null, null, null);
+					if (neighbors != null)
+					{
+						scope.addAll(neighbors);
+					}
+				}
+			}
+			return scope;
+		}
+	}
+	
+	// Interoperability graph
+	private static void addGraphHop(GraphHop hop, int label)
+	{
+		graph.addNode(hop.actor.getQualifiedName(), hop.actor.getName(), "actor");
+		graph.addNode(hop.mps.getQualifiedName(), hop.mps.getName(), "mps");
+		graph.addNode(hop.nextActor.getQualifiedName(), hop.nextActor.getName(), "actor");
+		String edgeLabel = String.format("#%d", label);
+		String edgeId = String.format("%s_%s-%s", hop.cn.getName(), hop.actor.getName(), hop.mps.getName());
+		graph.addEdge(edgeId, hop.actor.getQualifiedName(), hop.mps.getQualifiedName(), edgeLabel);
+		edgeId = String.format("%s_%s-%s", hop.cn.getName(), hop.mps.getName(), hop.nextActor.getName());
+		graph.addEdge(edgeId, hop.mps.getQualifiedName(), hop.nextActor.getQualifiedName(), edgeLabel);
+	}
+	
+	// Start of a rule method for --metrics: the start time to pass to ruleEnd
+	private static long ruleStart(int rule)
+	{
+		return metrics != null ? metrics.start(rule) : 0;
+	}
+	
+	private static void ruleEnd(int rule, long start)
+	{
+		if (metrics != null)
+		{
+			metrics.end(rule, start);
+		}
+	}
+	
+	// Rule 1
+	protected static boolean communicationNeedSatisfied(org.eclipse.uml2.uml.Class cn)
+	{
+		long start = ruleStart(1);
+		try
+		{
+			Evaluation e = evaluation.get();
+			if (e == null)
+			{
+				// Top-level Communication Need
+				e = evaluate(cn);
+				merge(e);
+				return e.satisfied;
+			}
+			e.needs.add(cn);
+			
+			boolean satisfied = false;
+			int i = 0, j;
+			EList<org.eclipse.uml2.uml.Class> cnActors = getNeighbors(cn, "RootInteroperability::Actor", null, null);
+			EList<org.eclipse.uml2.uml.Class> emptyList1 = new BasicEList<org.eclipse.uml2.uml.Class>();
+			EList<org.eclipse.uml2.uml.Class> act1Languages;
+			
+			out("Communication Need: %s", cn.getName());
+			out("------------------------------------");
+			out("");
+			
+			for (org.eclipse.uml2.uml.Class act1 : cnActors)
+			{
+				act1Languages = getNeighbors(act1, "RootInteroperability::Language", null, null);
+				j = 0;
+				for (org.eclipse.uml2.uml.Class act2 : cnActors)
+				{
+					if (act1 != act2 && i < j) // All the possible combinations given that act1 != act2
+					{
+						int truncations = e.truncations;
+						boolean connected = mayBeSatisfied(act1, act2);
+						if (connected && pairSatisfied(cn, act1, act2, emptyList1, act1Languages))
+						{
+							e.satisfiedCN.add(cn);
+							out("");
+							satisfied = true;
+							e.numCNSatisfied++;
+							e.cnTable.add(new String[] {cn.getName(), act1.getName(), act2.getName()});
+						}
+						else if (e.truncations != truncations)
+						{
+							if (LogSink.isEnabled(Category.DIAGNOSIS, Level.INFO))
+							{
+								out(Category.DIAGNOSIS, "Communication Need::%s --> Inconclusive (budget exhausted)", cn.getName());
+								out(Category.DIAGNOSIS, "");
+							}
+							e.numCNInconclusive++;
+						}
+						else
+						{
+							if (LogSink.isEnabled(Category.DIAGNOSIS, Level.INFO))
+							{
+								out(Category.DIAGNOSIS, "Communication Need::%s --> Not satisfied", cn.getName());
+								out(Category.DIAGNOSIS, "");
+								out(Category.DIAGNOSIS, "Communication Need not satisfaction analysis:");
+								out(Category.DIAGNOSIS, "");
+							}
+							notSatisfied(cn, act1, act2, connected);
+						}
+					}
+					j++;
+				}
+				i++;
+			}
+			return satisfied;
+		}
+		finally
+		{
+			ruleEnd(1, start);
+		}
+	}
+	
+	// Rule 2. vN holds the nodes already visited before the search, which are not crossed again, and
+	// keeps currActor on return
+	protected static boolean isSatisfied(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class targetActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+	{
+		long start = ruleStart(2);
+		try
+		{
+			// Add current actor to the visited nodes if it had not been visited
+			if (!vN.contains(currActor))
+			{
+				vN.add(currActor);
+			}
+			CompiledModel model = getCompiledModel();
+			switch (engine)
+			{
+				case BFS:
+					return new ReachabilitySearch(model, cn, targetActor).search(currActor, vN, allowedLang);
+				case BEST:
+					return new BestPathSearch(model, cn, targetActor).search(currActor, vN, allowedLang);
+				case BIDIRECTIONAL:
+					return new BidirectionalSearch(model, cn, targetActor).search(currActor, vN, allowedLang);
+				case CHECK:
+					// Sub Communication Needs may reset the flags during the path search
+					Evaluation flags = currentEvaluation();
+					boolean flagLanguage = flags.flagLanguage, flagAddress = flags.flagAddress;
+					boolean found = new PathSearch(model, cn, targetActor).search(currActor, vN, allowedLang);
+					boolean reachable = isReachable(model, cn, currActor, targetActor, vN, allowedLang, flagLanguage, flagAddress);
+					if (found != reachable)
+					{
+						out(Category.DIAGNOSIS, "Rule 2 engines disagree on %s (%s --> %s): path search %b, reachability %b", cn.getName(), currActor.getName(), targetActor.getName(), found, reachable);
+					}
+					return found;
+				default:
+					return new PathSearch(model, cn, targetActor).search(currActor, vN, allowedLang);
+			}
+		}
+		finally
+		{
+			ruleEnd(2, start);
+		}
+	}
+	
+	// Results of isSatisfied for a pair of actors, with what the search added to the Evaluation
+	private static class PairResult
+	{
+		private final boolean satisfied;
+		private final List<LogSink.Message> output;
+		private final Set<org.eclipse.uml2.uml.Class> actors;
+		private final Set<org.eclipse.uml2.uml.Class> mps;
+		private final Set<org.eclipse.uml2.uml.Class> lang;
+		private final BitSet expanded;
+		private final int numSubCNTotal;
+		private final int truncations;
+		// Hops of the interoperability graph, labelled from 1 after the Communication Needs satisfied before
+		private final List<GraphHop> graphHops;
+		// Nodes expanded and paths found counted by the metrics, if any
+		private final long[] searched;
+		
+		private PairResult(boolean satisfied, List<LogSink.Message> output, Set<org.eclipse.uml2.uml.Class> actors, Set<org.eclipse.uml2.uml.Class> mps, Set<org.eclipse.uml2.uml.Class> lang, BitSet expanded, int numSubCNTotal, int truncations, List<GraphHop> graphHops, long[] searched)
+		{
+			this.satisfied = satisfied;
+			this.output = output;
+			this.actors = actors;
+			this.mps = mps;
+			this.lang = lang;
+			this.expanded = expanded;
+			this.numSubCNTotal = numSubCNTotal;
+			this.truncations = truncations;
+			this.graphHops = graphHops;
+			this.searched = searched;
+		}
+	}
+	
+	// Results of isSatisfied shared by the Communication Needs evaluated on a compiled model, keyed by
+	// (initial actor, target actor, super languages of the reference language, sub Communication Needs,
+	// nodes visited before the search). Only kept during an evaluation run, from openPairResults() to
+	// clearPairResults(), so that a Communication Need evaluated on its own is always searched
+	private static Map<List<Object>, PairResult> pairResults = null;
+	private static CompiledModel pairResultsModel = null;
+	
+	private static synchronized void openPairResults(CompiledModel model)
+	{
+		pairResults = new ConcurrentHashMap<List<Object>, PairResult>();
+		pairResultsModel = model;
+	}
+	
+	// Results of the run on model, null outside a run
+	private static synchronized Map<List<Object>, PairResult> getPairResults(CompiledModel model)
+	{
+		return pairResultsModel == model ? pairResults : null;
+	}
+	
+	private static synchronized void clearPairResults()
+	{
+		pairResults = null;
+		pairResultsModel = null;
+	}
+	
+	// isSatisfied for a pair of actors of cn, searched once for the Communication Needs with the same key and
+	// replayed into the Evaluation of the others. Searches that go through sub Communication Needs, whose
+	// results and output depend on the Evaluation, are not kept, nor are searches with a state or time budget
+	private static boolean pairSatisfied(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class act1, org.eclipse.uml2.uml.Class act2, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+	{
+		Evaluation e = currentEvaluation();
+		CompiledModel model = getCompiledModel();
+		BitSet visited = new BitSet();
+		for (org.eclipse.uml2.uml.Class node : vN)
+		{
+			int id = model.getNodeId(node);
+			if (id < 0)
+			{
+				return isSatisfied(cn, act1, act2, vN, allowedLang);
+			}
+			visited.set(id);
+		}
+		Map<List<Object>, PairResult> results = getPairResults(model);
+		if (results == null || engine == Engine.CHECK || maxStates != Long.MAX_VALUE || cnTime > 0 || runDeadline != 0 || !e.flagLanguage || !e.flagAddress || model.getNodeId(act1) < 0 || model.getNodeId(act2) < 0)
+		{
+			return isSatisfied(cn, act1, act2, vN, allowedLang);
+		}
+		List<Object> key = Arrays.<Object>asList(model.getNodeId(act1), model.getNodeId(act2), getReferenceSuperLanguages(model, cn), new ArrayList<org.eclipse.uml2.uml.Class>(getNeighbors(cn, "RootInteroperability::Communication Need", null, "addressingNeed")), visited);
+		PairResult result = results.get(key);
+		if (result != null)
+		{
+			if (!vN.contains(act1))
+			{
+				vN.add(act1);
+			}
+			e.output.addAll(result.output);
+			e.actors.addAll(result.actors);
+			e.mps.addAll(result.mps);
+			e.lang.addAll(result.lang);
+			e.expanded.or(result.expanded);
+			e.numSubCNTotal += result.numSubCNTotal;
+			e.truncations += result.truncations;
+			for (GraphHop hop : result.graphHops)
+			{
+				e.graphHops.add(new GraphHop(cn, hop.actor, hop.mps, hop.nextActor, e.numCNSatisfied + hop.label));
+			}
+			if (metrics != null && result.searched != null)
+			{
+				metrics.addSearch(cn, result.searched[0], result.searched[1]);
+			}
+			return result.satisfied;
+		}
+		
+		// Search with empty statistics and expanded actors, added to those of the Evaluation afterwards
+		int output = e.output.size();
+		int graphHops = e.graphHops.size();
+		int numSubCNTotal = e.numSubCNTotal;
+		int truncations = e.truncations;
+		int subCNCalls = e.subCNCalls;
+		long[] searched = metrics != null ? metrics.getSearch(cn) : null;
+		Set<org.eclipse.uml2.uml.Class> actors = e.actors;
+		Set<org.eclipse.uml2.uml.Class> mps = e.mps;
+		Set<org.eclipse.uml2.uml.Class> lang = e.lang;
+		BitSet expanded = e.expanded;
+		e.actors = new HashSet<org.eclipse.uml2.uml.Class>();
+		e.mps = new HashSet<org.eclipse.uml2.uml.Class>();
+		e.lang = new HashSet<org.eclipse.uml2.uml.Class>();
+		e.expanded = new BitSet();
+		boolean satisfied;
+		try
+		{
+			satisfied = isSatisfied(cn, act1, act2, vN, allowedLang);
+		}
+		finally
+		{
+			Set<org.eclipse.uml2.uml.Class> searchActors = e.actors;
+			Set<org.eclipse.uml2.uml.Class> searchMPS = e.mps;
+			Set<org.eclipse.uml2.uml.Class> searchLang = e.lang;
+			BitSet searchExpanded = e.expanded;
+			e.actors = actors;
+			e.mps = mps;
+			e.lang = lang;
+			e.expanded = expanded;
+			actors = searchActors;
+			mps = searchMPS;
+			lang = searchLang;
+			expanded = searchExpanded;
+			e.actors.addAll(actors);
+			e.mps.addAll(mps);
+			e.lang.addAll(lang);
+			e.expanded.or(expanded);
+		}
+		if (e.subCNCalls == subCNCalls)
+		{
+			List<GraphHop> hops = new ArrayList<GraphHop>();
+			for (GraphHop hop : e.graphHops.subList(graphHops, e.graphHops.size()))
+			{
+				hops.add(new GraphHop(hop.cn, hop.actor, hop.mps, hop.nextActor, hop.label - e.numCNSatisfied));
+			}
+			List<LogSink.Message> searchOutput = new ArrayList<LogSink.Message>(e.output.subList(output, e.output.size()));
+			if (searched != null)
+			{
+				long[] after = metrics.getSearch(cn);
+				searched = new long[] {after[0] - searched[0], after[1] - searched[1]};
+			}
+			results.putIfAbsent(key, new PairResult(satisfied, searchOutput, actors, mps, lang, expanded, e.numSubCNTotal - numSubCNTotal, e.truncations - truncations, hops, searched));
+		}
+		return satisfied;
+	}
+	
+	// Single-pass analysis of Rule 2 for notSatisfied, with the flags off: PATH if the target actor is reached,
+	// plus LANGUAGES and ADDRESSING if it is reached on a path where every hop has allowed languages or
+	// satisfies addressing
+	protected static int diagnose(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class targetActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+	{
+		if (!vN.contains(currActor))
+		{
+			vN.add(currActor);
+		}
+		CompiledModel model = getCompiledModel();
+		// The best-path search, like the path search, only follows simple paths
+		if (engine == Engine.BFS || engine == Engine.BIDIRECTIONAL)
+		{
+			return new ReachabilitySearch(model, cn, targetActor).diagnose(currActor, vN, allowedLang);
+		}
+		return new PathSearch(model, cn, targetActor).diagnose(currActor, vN, allowedLang);
+	}
+	
+	// Runs the reachability search in a scratch Evaluation, so that its output, statistics and sub
+	// Communication Needs are not reported
+	private static boolean isReachable(CompiledModel model, org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class targetActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang, boolean flagLanguage, boolean flagAddress)
+	{
+		Evaluation previous = evaluation.get();
+		Evaluation scratch = new Evaluation();
+		scratch.flagLanguage = flagLanguage;
+		scratch.flagAddress = flagAddress;
+		evaluation.set(scratch);
+		try
+		{
+			return new ReachabilitySearch(model, cn, targetActor).search(currActor, vN, allowedLang);
+		}
+		finally
+		{
+			if (previous != null)
+			{
+				evaluation.set(previous);
+			}
+			else
+			{
+				evaluation.remove();
+			}
+		}
+	}
+	
+	// Super languages of the reference language of cn (Rule 12), null if there is not exactly one
+	protected static BitSet getReferenceSuperLanguages(CompiledModel model, org.eclipse.uml2.uml.Class cn)
+	{
+		EList<org.eclipse.uml2.uml.Class> referenceLang = getAssociations(cn, "RootInteroperability::Reference Language", null, null);
+		referenceLang.addAll(getNeighbors(cn, "RootInteroperability::Language", null, null));
+		int referenceId = referenceLang.size() == 1 ? model.index.getLanguageId(referenceLang.get(0)) : -1;
+		return referenceId >= 0 ? model.index.getSuperLanguages(referenceId) : null;
+	}
+	
+	// Prints a path that reaches the target actor. vN holds the visited actors and Message-Passing Systems
+	// and vNLang, for each hop, the Message-Passing System followed by the allowed languages
+	protected static void pathFound(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class[] vN, org.eclipse.uml2.uml.Class[] vNLang)
+	{
+		Evaluation e = currentEvaluation();
+		if (metrics != null)
+		{
+			metrics.pathFound(cn);
+		}
+		// The path is only formatted when it is printed
+		boolean print = LogSink.isEnabled(Category.PATH, Level.INFO);
+		int j = 0;
+		for (int i = 0; i < vN.length - 2; i = i + 2)
+		{
+			String languages = null;
+			j++;
+			if (j < vNLang.length && hasStereotype(vNLang[j], "RootInteroperability::Language"))
+			{
+				if (print)
+				{
+					languages = String.format("%s", vNLang[j].getName());
+				}
+				// For statistics
+				if (!e.lang.contains(vNLang[j]))
+				{
+					e.lang.add(vNLang[j]);
+				}
+			}
+			j++;
+			while (j < vNLang.length && hasStereotype(vNLang[j], "RootInteroperability::Language"))
+			{
+				if (print)
+				{
+					languages = String.format("%s - %s", languages, vNLang[j].getName());
+				}
+				// For statistics
+				if (!e.lang.contains(vNLang[j]))
+				{
+					e.lang.add(vNLang[j]);
+				}
+				j++;
+			}
+			if (print)
+			{
+				out(Category.PATH, "%s <--> %s <--> %s (%s)", vN[i].getName(), vN[i+1].getName(), vN[i+2].getName(), languages);
+			}
+			
+			// For statistics
+			if (!e.actors.contains(vN[i]))
+			{
+				e.actors.add(vN[i]);
+			}
+			if (!e.mps.contains(vN[i+1]))
+			{
+				e.mps.add(vN[i+1]);
+			}
+			e.numSubCNTotal++;
+			
+			// Interoperability graph
+			if (e.flagLanguage == true && e.flagAddress == true && drawGraph == true)
+			{
+				e.graphHops.add(new GraphHop(cn, vN[i], vN[i+1], vN[i+2], e.numCNSatisfied+1));
+			}
+		}
+		if (print)
+		{
+			out(Category.PATH, "");
+		}
+	}
+	
+	// Depth-first search of Rule 2 over the compiled model. Visited actors and Message-Passing Systems are
+	// kept in a bitset, the path in an int stack and the allowed languages of every hop in one language stack
+	private static class PathSearch
+	{
+		private final CompiledModel model;
+		private final Evaluation evaluation;
+		private final org.eclipse.uml2.uml.Class cn;
+		private final int targetActor;
+		private final BitSet referenceSuperLanguages; // Super languages of the reference language, null if there is not exactly one
+		
+		private final BitSet visited;
+		private int[] path;
+		private int pathSize = 0;
+		private int pathStart; // Position in the path of the first hop
+		private int[] langs = new int[16];
+		private int[] langStart = new int[8]; // Allowed languages of hop h are langs[langStart[h]..langStart[h+1])
+		private BitSet[] allowedSet = new BitSet[8];
+		
+		private int startActor;
+		
+		private boolean diagnose = false;
+		private int diagnosis = 0;
+		private final Map<Long, Boolean> addressing = new HashMap<Long, Boolean>(); // By (actor, mps, next actor)
+		
+		private PathSearch(CompiledModel model, org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class targetActor)
+		{
+			this.model = model;
+			this.evaluation = currentEvaluation();
+			this.cn = cn;
+			this.targetActor = model.getNodeId(targetActor);
+			this.visited = new BitSet(model.nodes.length);
+			this.path = new int[2 * model.nodes.length];
+			this.referenceSuperLanguages = getReferenceSuperLanguages(model, cn);
+		}
+		
+		private boolean search(org.eclipse.uml2.uml.Class currActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+		{
+			int actor = model.getNodeId(currActor);
+			for (org.eclipse.uml2.uml.Class node : vN)
+			{
+				visited.set(model.getNodeId(node));
+				path[pathSize++] = model.getNodeId(node);
+			}
+			pathStart = pathSize;
+			langStart[0] = 0;
+			langStart[1] = 0;
+			allowedSet[0] = new BitSet();
+			for (org.eclipse.uml2.uml.Class lang : allowedLang)
+			{
+				pushLanguage(0, model.index.getLanguageId(lang));
+			}
+			startActor = actor;
+			return search(actor, 0, true);
+		}
+		
+		private int diagnose(org.eclipse.uml2.uml.Class currActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+		{
+			diagnose = true;
+			search(currActor, vN, allowedLang);
+			return diagnosis;
+		}
+		
+		// languagesOK tells whether every hop so far had allowed languages, for diagnose()
+		private boolean search(int currActor, int hop, boolean languagesOK)
+		{
+			boolean satisfied = false;
+			evaluation.expanded.set(currActor);
+			if (metrics != null)
+			{
+				metrics.expanded(cn, hop);
+			}
+			
+			if (currActor == targetActor)
+			{
+				pathFound(cn, visitedNodes(), visitedLanguages(hop));
+				diagnosis |= PATH | (languagesOK ? LANGUAGES : 0);
+				if (diagnose && (diagnosis & ADDRESSING) == 0 && isAddressable(hop))
+				{
+					diagnosis |= ADDRESSING;
+				}
+				return true; // Target actor reached
+			}
+			if (evaluation.exhausted())
+			{
+				return false;
+			}
+			if (hop >= maxHops)
+			{
+				evaluation.truncations++;
+				return false;
+			}
+			
+			for (int mps : model.mpsOfActor[currActor])
+			{
+				if (visited.get(mps))
+				{
+					continue;
+				}
+				for (int actor : model.actorsOfMPS[mps])
+				{
+					if (visited.get(actor))
+					{
+						continue;
+					}
+					boolean allowed = getAllowedLanguages(currActor, actor, mps, hop);
+					if ((allowed || evaluation.flagLanguage == false) && (conditionsForSatisfaction(cn, model.nodes[currActor], model.nodes[actor], model.nodes[mps])))
+					{
+						visited.set(mps);
+						visited.set(actor);
+						path[pathSize++] = mps;
+						path[pathSize++] = actor;
+						
+						if (search(actor, hop + 1, languagesOK && allowed)) // Recursion
+						{
+							satisfied = true;
+						}
+						visited.clear(actor);
+						visited.clear(mps);
+						pathSize -= 2;
+					}
+				}
+			}
+			return satisfied;
+		}
+		
+		// Rule 8 over language ids: pushes the allowed languages of the next hop (Rules 9 and 10) on
+		// the language stack and returns whether there is any
+		private boolean getAllowedLanguages(int currActor, int nextActor, int mps, int hop)
+		{
+			int next = hop + 1;
+			if (next + 1 >= langStart.length)
+			{
+				langStart = Arrays.copyOf(langStart, langStart.length * 2);
+				allowedSet = Arrays.copyOf(allowedSet, allowedSet.length * 2);
+			}
+			langStart[next + 1] = langStart[next];
+			if (allowedSet[next] == null)
+			{
+				allowedSet[next] = new BitSet();
+			}
+			allowedSet[next].clear();
+			if (referenceSuperLanguages == null)
+			{
+				return false;
+			}
+			
+			// Rule 9
+			for (int i = langStart[hop]; i < langStart[next]; i++)
+			{
+				int lang = langs[i];
+				if (model.actorLanguageSet[currActor].get(lang) && model.actorLanguageSet[nextActor].get(lang) && model.compatibleLanguages[mps].get(lang) && referenceSuperLanguages.get(lang))
+				{
+					pushLanguage(next, lang);
+				}
+			}
+			
+			// Rule 10 (union)
+			for (int lang : model.actorLanguages[currActor])
+			{
+				for (int langTrans : model.translationsOf[lang])
+				{
+					boolean correctLT = model.correct[langTrans];
+					for (int nLang : model.translationLanguages[langTrans])
+					{
+						if (model.actorLanguageSet[nextActor].get(nLang) && allowedSet[hop].get(lang) && model.compatibleLanguages[mps].get(nLang) && correctLT && contains(model.translators[langTrans], currActor) && lang != nLang
+								&& referenceSuperLanguages.get(lang) && referenceSuperLanguages.get(nLang) && !allowedSet[next].get(nLang))
+						{
+							pushLanguage(next, nLang);
+						}
+					}
+				}
+			}
+			return langStart[next + 1] > langStart[next];
+		}
+		
+		// Whether every hop of the current path satisfies the addressing of Rule 3, evaluated with the address
+		// flag on and once per hop. Checking complete paths only keeps the sub Communication Needs of hops that
+		// lead nowhere from being evaluated
+		private boolean isAddressable(int hops)
+		{
+			for (int hop = 1; hop <= hops; hop++)
+			{
+				int currActor = hop == 1 ? startActor : path[pathStart + 2 * hop - 3];
+				int mps = path[pathStart + 2 * hop - 2];
+				int nextActor = path[pathStart + 2 * hop - 1];
+				Long key = ((long) currActor * model.nodes.length + mps) * model.nodes.length + nextActor;
+				Boolean result = addressing.get(key);
+				if (result == null)
+				{
+					result = addressingConditions(cn, model.nodes[currActor], model.nodes[nextActor], model.nodes[mps], evaluation);
+					addressing.put(key, result);
+				}
+				if (!result)
+				{
+					return false;
+				}
+			}
+			return true;
+		}
+		
+		private void pushLanguage(int hop, int lang)
+		{
+			int top = langStart[hop + 1];
+			if (top == langs.length)
+			{
+				langs = Arrays.copyOf(langs, langs.length * 2);
+			}
+			langs[top] = lang;
+			langStart[hop + 1] = top + 1;
+			allowedSet[hop].set(lang);
+		}
+		
+		private static boolean contains(int[] ids, int id)
+		{
+			for (int i : ids)
+			{
+				if (i == id)
+				{
+					return true;
+				}
+			}
+			return false;
+		}
+		
+		private org.eclipse.uml2.uml.Class[] visitedNodes()
+		{
+			org.eclipse.uml2.uml.Class[] vN = new org.eclipse.uml2.uml.Class[pathSize];
+			for (int i = 0; i < pathSize; i++)
+			{
+				vN[i] = model.nodes[path[i]];
+			}
+			return vN;
+		}
+		
+		private org.eclipse.uml2.uml.Class[] visitedLanguages(int hops)
+		{
+			org.eclipse.uml2.uml.Class[] vNLang = new org.eclipse.uml2.uml.Class[hops + langStart[hops + 1] - langStart[1]];
+			int k = 0;
+			for (int hop = 1; hop <= hops; hop++)
+			{
+				vNLang[k++] = model.nodes[path[pathStart + 2 * hop - 2]];
+				for (int i = langStart[hop]; i < langStart[hop + 1]; i++)
+				{
+					vNLang[k++] = model.index.getLanguage(langs[i]);
+				}
+			}
+			return vNLang;
+		}
+	}
+	
+	// Breadth-first search of Rule 2 over states (actor, allowed languages) of the compiled model. Rules 8 to
+	// 10 are monotone in the allowed languages, so a state is skipped when its actor has already been reached
+	// with a superset of its languages. Paths are not required to be simple: the search never misses a path
+	// found by PathSearch, but it may accept a walk that only gains a language by crossing an actor twice.
+	// Only one path, the shortest, is reported
+	private static class ReachabilitySearch
+	{
+		private final CompiledModel model;
+		private final Evaluation evaluation;
+		private final org.eclipse.uml2.uml.Class cn;
+		private final int targetActor;
+		private final BitSet referenceSuperLanguages;
+		
+		// States, by state id: actor, allowed languages, the LANGUAGES and ADDRESSING bits of diagnose() and the
+		// state and Message-Passing System it was reached from
+		private int numStates = 0;
+		private int[] stateActor = new int[16];
+		private BitSet[] stateLanguages = new BitSet[16];
+		private int[] stateDiagnosis = new int[16];
+		private int[] parent = new int[16];
+		private int[] parentMPS = new int[16];
+		private final List<List<Integer>> reached; // States of each actor, by node id
+		private final Map<Long, Boolean> conditions = new HashMap<Long, Boolean>(); // Rule 3, by (actor, mps, next actor)
+		private final Map<Long, Boolean> addressing = new HashMap<Long, Boolean>(); // Addressing of Rule 3, likewise
+		
+		private boolean diagnose = false;
+		private int diagnosis = 0;
+		
+		private ReachabilitySearch(CompiledModel model, org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class targetActor)
+		{
+			this.model = model;
+			this.evaluation = currentEvaluation();
+			this.cn = cn;
+			this.targetActor = model.getNodeId(targetActor);
+			this.referenceSuperLanguages = getReferenceSuperLanguages(model, cn);
+			this.reached = new ArrayList<List<Integer>>(Collections.<List<Integer>>nCopies(model.nodes.length, null));
+		}
+		
+		private int diagnose(org.eclipse.uml2.uml.Class currActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+		{
+			diagnose = true;
+			search(currActor, vN, allowedLang);
+			return diagnosis;
+		}
+		
+		// Stops at the first path found, or with diagnose() once every state has been explored
+		private boolean search(org.eclipse.uml2.uml.Class currActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+		{
+			int actor = model.getNodeId(currActor);
+			BitSet blocked = new BitSet(model.nodes.length);
+			for (org.eclipse.uml2.uml.Class node : vN)
+			{
+				blocked.set(model.getNodeId(node));
+			}
+			blocked.clear(actor);
+			BitSet languages = new BitSet();
+			for (org.eclipse.uml2.uml.Class lang : allowedLang)
+			{
+				languages.set(model.index.getLanguageId(lang));
+			}
+			reach(actor, languages, LANGUAGES | ADDRESSING, -1, -1);
+			if (actor == targetActor)
+			{
+				pathFound(cn, new org.eclipse.uml2.uml.Class[] {currActor}, new org.eclipse.uml2.uml.Class[0]);
+				diagnosis = PATH | LANGUAGES | ADDRESSING;
+				return true; // Target actor reached
+			}
+			
+			for (int state = 0; state < numStates; state++)
+			{
+				int curr = stateActor[state];
+				if (curr == targetActor)
+				{
+					continue;
+				}
+				evaluation.expanded.set(curr);
+				if (metrics != null)
+				{
+					metrics.expanded(cn, 0);
+				}
+				if (evaluation.exhausted())
+				{
+					break;
+				}
+				if (maxHops != Integer.MAX_VALUE && hops(state) >= maxHops)
+				{
+					evaluation.truncations++;
+					continue;
+				}
+				for (int mps : model.mpsOfActor[curr])
+				{
+					if (blocked.get(mps))
+					{
+						continue;
+					}
+					for (int next : model.actorsOfMPS[mps])
+					{
+						if (blocked.get(next) || next == curr)
+						{
+							continue;
+						}
+						BitSet nextLanguages = getAllowedLanguages(model, referenceSuperLanguages, curr, next, mps, stateLanguages[state]);
+						if ((!nextLanguages.isEmpty() || evaluation.flagLanguage == false) && conditionsForSatisfaction(curr, next, mps))
+						{
+							int nextDiagnosis = stateDiagnosis[state];
+							if (nextLanguages.isEmpty())
+							{
+								nextDiagnosis &= ~LANGUAGES;
+							}
+							if (diagnose && (nextDiagnosis & ADDRESSING) != 0 && !isAddressable(curr, next, mps))
+							{
+								nextDiagnosis &= ~ADDRESSING;
+							}
+							if (reach(next, nextLanguages, nextDiagnosis, state, mps) && next == targetActor)
+							{
+								if (diagnosis == 0)
+								{
+									report(numStates - 1);
+								}
+								diagnosis |= PATH | nextDiagnosis;
+								if (!diagnose)
+								{
+									return true; // Target actor reached
+								}
+							}
+						}
+					}
+				}
+			}
+			return diagnosis != 0;
+		}
+		
+		// Adds the state (actor, languages, bits) unless the actor was reached with a superset of languages
+		// and bits
+		private boolean reach(int actor, BitSet languages, int bits, int from, int mps)
+		{
+			List<Integer> seen = reached.get(actor);
+			if (seen == null)
+			{
+				seen = new ArrayList<Integer>();
+				reached.set(actor, seen);
+			}
+			for (int other : seen)
+			{
+				BitSet missing = (BitSet) languages.clone();
+				missing.andNot(stateLanguages[other]);
+				if (missing.isEmpty() && (bits & ~stateDiagnosis[other]) == 0)
+				{
+					return false;
+				}
+			}
+			if (numStates == stateActor.length)
+			{
+				stateActor = Arrays.copyOf(stateActor, numStates * 2);
+				stateLanguages = Arrays.copyOf(stateLanguages, numStates * 2);
+				stateDiagnosis = Arrays.copyOf(stateDiagnosis, numStates * 2);
+				parent = Arrays.copyOf(parent, numStates * 2);
+				parentMPS = Arrays.copyOf(parentMPS, numStates * 2);
+			}
+			seen.add(numStates);
+			stateActor[numStates] = actor;
+			stateLanguages[numStates] = languages;
+			stateDiagnosis[numStates] = bits;
+			parent[numStates] = from;
+			parentMPS[numStates] = mps;
+			numStates++;
+			return true;
+		}
+		
+		// Addressing of Rule 3, evaluated once per hop with the address flag on
+		private boolean isAddressable(int currActor, int nextActor, int mps)
+		{
+			Long key = ((long) currActor * model.nodes.length + mps) * model.nodes.length + nextActor;
+			Boolean result = addressing.get(key);
+			if (result == null)
+			{
+				result = addressingConditions(cn, model.nodes[currActor], model.nodes[nextActor], model.nodes[mps], evaluation);
+				addressing.put(key, result);
+			}
+			return result;
+		}
+		
+		// Rule 3, evaluated once per hop
+		private boolean conditionsForSatisfaction(int currActor, int nextActor, int mps)
+		{
+			Long key = ((long) currActor * model.nodes.length + mps) * model.nodes.length + nextActor;
+			Boolean result = conditions.get(key);
+			if (result == null)
+			{
+				result = interoperability.conditionsForSatisfaction(cn, model.nodes[currActor], model.nodes[nextActor], model.nodes[mps]);
+				conditions.put(key, result);
+			}
+			return result;
+		}
+		
+		// Rule 8 over language ids: the allowed languages of the next hop (Rules 9 and 10)
+		private static BitSet getAllowedLanguages(CompiledModel model, BitSet referenceSuperLanguages, int currActor, int nextActor, int mps, BitSet allowed)
+		{
+			BitSet next = new BitSet();
+			if (referenceSuperLanguages == null)
+			{
+				return next;
+			}
+			
+			// Rule 9
+			for (int lang = allowed.nextSetBit(0); lang >= 0; lang = allowed.nextSetBit(lang + 1))
+			{
+				if (model.actorLanguageSet[currActor].get(lang) && model.actorLanguageSet[nextActor].get(lang) && model.compatibleLanguages[mps].get(lang) && referenceSuperLanguages.get(lang))
+				{
+					next.set(lang);
+				}
+			}
+			
+			// Rule 10 (union)
+			for (int lang : model.actorLanguages[currActor])
+			{
+				if (!allowed.get(lang) || !referenceSuperLanguages.get(lang))
+				{
+					continue;
+				}
+				for (int langTrans : model.translationsOf[lang])
+				{
+					if (!PathSearch.contains(model.translators[langTrans], currActor) || !model.correct[langTrans])
+					{
+						continue;
+					}
+					for (int nLang : model.translationLanguages[langTrans])
+					{
+						if (model.actorLanguageSet[nextActor].get(nLang) && model.compatibleLanguages[mps].get(nLang) && lang != nLang && referenceSuperLanguages.get(nLang))
+						{
+							next.set(nLang);
+						}
+					}
+				}
+			}
+			return next;
+		}
+		
+		private int hops(int state)
+		{
+			int hops = 0;
+			for (int s = state; parent[s] >= 0; s = parent[s])
+			{
+				hops++;
+			}
+			return hops;
+		}
+		
+		// Prints the path that leads to the given state
+		private void report(int state)
+		{
+			int hops = 0;
+			int numLanguages = 0;
+			for (int s = state; parent[s] >= 0; s = parent[s])
+			{
+				hops++;
+				numLanguages += stateLanguages[s].cardinality();
+			}
+			org.eclipse.uml2.uml.Class[] vN = new org.eclipse.uml2.uml.Class[2 * hops + 1];
+			org.eclipse.uml2.uml.Class[] vNLang = new org.eclipse.uml2.uml.Class[hops + numLanguages];
+			int i = vN.length - 1;
+			int k = vNLang.length;
+			for (int s = state; parent[s] >= 0; s = parent[s])
+			{
+				vN[i--] = model.nodes[stateActor[s]];
+				vN[i--] = model.nodes[parentMPS[s]];
+				BitSet languages = stateLanguages[s];
+				k -= languages.cardinality() + 1;
+				int j = k;
+				vNLang[j++] = model.nodes[parentMPS[s]];
+				for (int lang = languages.nextSetBit(0); lang >= 0; lang = languages.nextSetBit(lang + 1))
+				{
+					vNLang[j++] = model.index.getLanguage(lang);
+				}
+			}
+			vN[0] = model.nodes[stateActor[0]];
+			pathFound(cn, vN, vNLang);
+		}
+	}
+	
+	// Bidirectional breadth-first search of Rule 2, with the semantics of ReachabilitySearch. The allowed
+	// languages of a hop (Rules 9 and 10) are the union of those each allowed language leads to on its own, so
+	// a walk keeps some allowed language on every hop if and only if a chain of single languages does. The
+	// search therefore runs over states (actor, language): forward from the initial actor and its allowed
+	// languages, and backward from the target actor and its languages, where a predecessor state is one whose
+	// language leads to the language of the state. It expands the smaller frontier one hop at a time and stops
+	// when the frontiers share a state, so that on long chains each side only goes about half way. The path
+	// is then reported with all its allowed languages, as ReachabilitySearch reports it
+	private static class BidirectionalSearch
+	{
+		private final CompiledModel model;
+		private final Evaluation evaluation;
+		private final org.eclipse.uml2.uml.Class cn;
+		private final int targetActor;
+		private final BitSet referenceSuperLanguages;
+		private final int numLanguages;
+		
+		// States reached by each side, by actor * numLanguages + language, with the state and Message-Passing
+		// System they were reached from (next state * nodes + mps, toward the initial actor forward and toward
+		// the target actor backward), -1 for the initial states
+		private final Map<Long, Long> forward = new HashMap<Long, Long>();
+		private final Map<Long, Long> backward = new HashMap<Long, Long>();
+		private final Map<Long, Boolean> conditions = new HashMap<Long, Boolean>(); // Rule 3, by (actor, mps, next actor)
+		private final Map<Long, BitSet[]> images = new HashMap<Long, BitSet[]>(); // Rules 9 and 10 per language of the actor, likewise
+		private BitSet blocked;
+		
+		private BidirectionalSearch(CompiledModel model, org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class targetActor)
+		{
+			this.model = model;
+			this.evaluation = currentEvaluation();
+			this.cn = cn;
+			this.targetActor = model.getNodeId(targetActor);
+			this.referenceSuperLanguages = getReferenceSuperLanguages(model, cn);
+			this.numLanguages = Math.max(1, model.index.getLanguageCount());
+		}
+		
+		// Stops at the first path found
+		private boolean search(org.eclipse.uml2.uml.Class currActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
+		{
+			if (evaluation.flagLanguage == false || referenceSuperLanguages == null)
+			{
+				// Without languages to narrow, the states are the actors themselves
+				return new ReachabilitySearch(model, cn, model.nodes[targetActor]).search(currActor, vN, allowedLang);
+			}
+			int actor = model.getNodeId(currActor);
+			if (actor == targetActor)
+			{
+				pathFound(cn, new org.eclipse.uml2.uml.Class[] {currActor}, new org.eclipse.uml2.uml.Class[0]);
+				return true; // Target actor reached
+			}
+			blocked = new BitSet(model.nodes.length);
+			for (org.eclipse.uml2.uml.Class node : vN)
+			{
+				blocked.set(model.getNodeId(node));
+			}
+			blocked.clear(actor);
+			if (blocked.get(targetActor))
+			{
+				return false;
+			}
+			
+			BitSet languages = new BitSet();
+			List<Long> forwardFrontier = new ArrayList<Long>();
+			for (org.eclipse.uml2.uml.Class lang : allowedLang)
+			{
+				int id = model.index.getLanguageId(lang);
+				languages.set(id);
+				if (model.actorLanguageSet[actor].get(id) && referenceSuperLanguages.get(id) && forward.put(state(actor, id), -1L) == null)
+				{
+					forwardFrontier.add(state(actor, id));
+				}
+			}
+			List<Long> backwardFrontier = new ArrayList<Long>();
+			for (int lang : model.actorLanguages[targetActor])
+			{
+				if (referenceSuperLanguages.get(lang) && backward.put(state(targetActor, lang), -1L) == null)
+				{
+					backwardFrontier.add(state(targetActor, lang));
+				}
+			}
+			
+			int hops = 0;
+			while (!forwardFrontier.isEmpty() && !backwardFrontier.isEmpty())
+			{
+				if (hops >= maxHops)
+				{
+					evaluation.truncations++;
+					return false;
+				}
+				hops++;
+				boolean forwardSide = forwardFrontier.size() <= backwardFrontier.size();
+				List<Long> frontier = forwardSide ? forwardFrontier : backwardFrontier;
+				List<Long> nextFrontier = new ArrayList<Long>();
+				for (long state : frontier)
+				{
+					int curr = (int) (state / numLanguages);
+					evaluation.expanded.set(curr);
+					if (metrics != null)
+					{
+						metrics.expanded(cn, hops - 1);
+					}
+					if (evaluation.exhausted())
+					{
+						return false;
+					}
+					long meet = forwardSide ? expandForward(state, nextFrontier) : expandBackward(state, nextFrontier);
+					if (meet >= 0)
+					{
+						report(meet, languages);
+						return true; // Target actor reached
+					}
+				}
+				if (forwardSide)
+				{
+					forwardFrontier = nextFrontier;
+				}
+				else
+				{
+					backwardFrontier = nextFrontier;
+				}
+			}
+			return false;
+		}
+		
+		// Adds the successors of a forward state to nextFrontier, and returns the first one the backward side
+		// has reached, or -1
+		private long expandForward(long state, List<Long> nextFrontier)
+		{
+			int curr = (int) (state / numLanguages);
+			int lang = (int) (state % numLanguages);
+			if (curr == targetActor)
+			{
+				return -1;
+			}
+			int index = indexOf(model.actorLanguages[curr], lang);
+			for (int mps : model.mpsOfActor[curr])
+			{
+				if (blocked.get(mps))
+				{
+					continue;
+				}
+				for (int next : model.actorsOfMPS[mps])
+				{
+					if (blocked.get(next) || next == curr)
+					{
+						continue;
+					}
+					BitSet nextLanguages = images(curr, next, mps)[index];
+					if (nextLanguages.isEmpty() || !conditionsForSatisfaction(curr, next, mps))
+					{
+						continue;
+					}
+					for (int nLang = nextLanguages.nextSetBit(0); nLang >= 0; nLang = nextLanguages.nextSetBit(nLang + 1))
+					{
+						long nextState = state(next, nLang);
+						if (forward.containsKey(nextState))
+						{
+							continue;
+						}
+						forward.put(nextState, state * model.nodes.length + mps);
+						if (backward.containsKey(nextState))
+						{
+							return nextState;
+						}
+						nextFrontier.add(nextState);
+					}
+				}
+			}
+			return -1;
+		}
+		
+		// Adds the predecessors of a backward state to nextFrontier, and returns the first one the forward side
+		// has reached, or -1
+		private long expandBackward(long state, List<Long> nextFrontier)
+		{
+			int next = (int) (state / numLanguages);
+			int nLang = (int) (state % numLanguages);
+			for (int mps : model.mpsOfActor[next])
+			{
+				if (blocked.get(mps))
+				{
+					continue;
+				}
+				for (int curr : model.actorsOfMPS[mps])
+				{
+					if (blocked.get(curr) || curr == next || curr == targetActor)
+					{
+						continue;
+					}
+					BitSet[] currImages = images(curr, next, mps);
+					for (int i = 0; i < currImages.length; i++)
+					{
+						long currState = state(curr, model.actorLanguages[curr][i]);
+						if (!currImages[i].get(nLang) || backward.containsKey(currState) || !conditionsForSatisfaction(curr, next, mps))
+						{
+							continue;
+						}
+						backward.put(currState, state * model.nodes.length + mps);
+						if (forward.containsKey(currState))
+						{
+							return currState;
+						}
+						nextFrontier.add(currState);
+					}
+				}
+			}
+			return -1;
+		}
+		
+		private long state(int actor, int lang)
+		{
+			return (long) actor * numLanguages + lang;
+		}
+		
+		private static int indexOf(int[] values, int value)
+		{
+			for (int i = 0; i < values.length; i++)
+			{
+				if (values[i] == value)
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		// Allowed languages of the hop for each language of the actor on its own, evaluated once per hop
+		private BitSet[] images(int currActor, int nextActor, int mps)
+		{
+			Long key = ((long) currActor * model.nodes.length + mps) * model.nodes.length + nextActor;
+			BitSet[] result = images.get(key);
+			if (result == null)
+			{
+				int[] actorLanguages = model.actorLanguages[currActor];
+				result = new BitSet[actorLanguages.length];
+				for (int i = 0; i < actorLanguages.length; i++)
+				{
+					BitSet lang = new BitSet();
+					lang.set(actorLanguages[i]);
+					result[i] = ReachabilitySearch.getAllowedLanguages(model, referenceSuperLanguages, currActor, nextActor, mps, lang);
+				}
+				images.put(key, result);
+			}
+			return result;
+		}
+		
+		// Rule 3, evaluated once per hop
+		private boolean conditionsForSatisfaction(int currActor, int nextActor, int mps)
+		{
+			Long key = ((long) currActor * model.nodes.length + mps) * model.nodes.length + nextActor;
+			Boolean result = conditions.get(key);
+			if (result == null)
+			{
+				result = interoperability.conditionsForSatisfaction(cn, model.nodes[currActor], model.nodes[nextActor], model.nodes[mps]);
+				conditions.put(key, result);
+			}
+			return result;
+		}
+		
+		// Prints the path through the state where the two sides met, with the allowed languages of each hop
+		// narrowed from the initial ones
+		private void report(long meet, BitSet languages)
+		{
+			List<Integer> path = new ArrayList<Integer>(); // Actor, mps, actor, ...
+			long s = meet;
+			for (long from = forward.get(s); from >= 0; from = forward.get(s))
+			{
+				path.add(0, (int) (s / numLanguages));
+				path.add(0, (int) (from % model.nodes.length));
+				s = from / model.nodes.length;
+			}
+			path.add(0, (int) (s / numLanguages));
+			for (long to = backward.get(meet); to >= 0; to = backward.get(to / model.nodes.length))
+			{
+				path.add((int) (to % model.nodes.length));
+				path.add((int) (to / model.nodes.length / numLanguages));
+			}
+			
+			int hops = path.size() / 2;
+			org.eclipse.uml2.uml.Class[] vN = new org.eclipse.uml2.uml.Class[path.size()];
+			List<org.eclipse.uml2.uml.Class> vNLang = new ArrayList<org.eclipse.uml2.uml.Class>();
+			vN[0] = model.nodes[path.get(0)];
+			BitSet allowed = languages;
+			for (int h = 0; h < hops; h++)
+			{
+				int mps = path.get(2 * h + 1);
+				vN[2 * h + 1] = model.nodes[mps];
+				vN[2 * h + 2] = model.nodes[path.get(2 * h + 2)];
+				allowed = ReachabilitySearch.getAllowedLanguages(model, referenceSuperLanguages, path.get(2 * h), path.get(2 * h + 2), mps, allowed);
+				vNLang.add(model.nodes[mps]);
+				for (int lang = allowed.nextSetBit(0); lang >= 0; lang = allowed.nextSetBit(lang + 1))
+				{
+					vNLang.add(model.index.getLanguage(lang));
+				}
+			}
+			pathFound(cn, vN, vNLang.toArray(new org.eclipse.uml2.uml.Class[vNLang.size()]));
+		}
+	}
+	
+	// Best-first search of Rule 2 over simple paths of the compiled model, in order of pathCost, that reports
+	// the bestPaths cheapest ones. As hop costs are not negative, paths reach the target actor in order of
+	// cost. The search stops after bestPaths paths, and no actor is expanded more than bestPaths times with
+	// the same allowed languages, so its work grows with bestPaths rather than with the number of paths. The
+	// cap can hide a path that only a later partial path through the same actor could complete, as the
+	// earlier ones may cross the nodes it needs: the paths reported are then not always the bestPaths
+	// cheapest ones. The result of Rule 2 stays exact, as when the cap hid every path the path search decides
+	// it. Paths are reported once the search ends
+	private static class BestPathSearch
+	{
+		private final CompiledModel model;
+		private final Evaluation evaluation;
+		private final org.eclipse.uml2.uml.Class cn;
+		private final int targetActor;
+		private final BitSet referenceSuperLanguages;
+		private final Map<Long, Boolean> conditions = new HashMap<Long, Boolean>(); // Rule 3, by (actor, mps, next actor)
+		private final Map<Integer, Map<BitSet, Integer>> expanded = new HashMap<Integer, Map<BitSet, Integer>>(); // By actor and allowed languages
+		private long sequence = 0;
+		private boolean cut = false; // Whether the cap stopped a partial path
+		
+		// Partial path: its last hop (mps, actor), allowed languages and cost, and the path it extends
+		private static class Label implements Comparable<Label>
+		{
+			private final Label parent;
+			private final int mps;
+			private final int actor;
+			private final BitSet languages;
+			private final long cost;
+			private final int hops;
+			private final long sequence; // Ties are broken in the order labels are created
+			
+			private Label(Label parent, int mps, int actor, BitSet languages, long cost, long sequence)
+			{
+				this.parent = parent;
+				this.mps = mps;
+				this.actor = actor;
+				this.languages = languages;
+				this.cost = cost;
+				this.hops = parent != null ? parent.hops + 1 : 0;
+				this.sequence = sequence;
+			}
+			
+			@Override
+			public int compareTo(Label other)
+			{
+				return cost != other.cost ? Long.compare(cost, other.cost) : Long.compare(sequence, other.sequence);
+			}
+			
+			// Whether the path crosses node (actor or Message-Passing System)
+			private boolean crosses(int node)
 			{
-				if (act1 != act2 && i < j) // All the possible combinations given that act1 != act2
+				for (Label label = this; label != null; label = label.parent)
 				{
-					if (isSatisfied(cn, act1, act2, emptyList1, act1Languages, emptyList2))
+					if (label.actor == node || label.mps == node)
 					{
-						cn.setValue(cn.getAppliedStereotype("RootInteroperability::Communication Need"), "satisfied", true);
-						out("");
-						satisfied = true;
-						numCNSatisfied++;
-						writerCN.printf("%d & %s & %s & %s \\\\", numCNSatisfied, cn.getName(), act1.getName(), act2.getName());
-						writerCN.println();
-						writerCN.printf("\\hline");
-						writerCN.println();
-					}
-					else
-					{
-						out("Communication Need::%s --> Not satisfied", cn.getName());
-						out("");
-						out("Communication Need not satisfaction analysis:");
-						out("");
-						notSatisfied(cn, act1, act2);
+						return true;
 					}
 				}
-				j++;
+				return false;
 			}
-			i++;
 		}
-		return satisfied;
-	}
-	
-	// Rule 2
-	protected static boolean isSatisfied(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class targetActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang, EList<org.eclipse.uml2.uml.Class> vNLang)
-	{
-		boolean satisfied = false;
-		EList<org.eclipse.uml2.uml.Class> currActorMPS = getAssociations(currActor, "RootInteroperability::Message-Passing System", null, null);
-		EList<org.eclipse.uml2.uml.Class> mpsActor = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> allowedLanguages = new BasicEList<org.eclipse.uml2.uml.Class>();
 		
-		// Add current actor to the visited nodes if it had not been visited
-		if (!vN.contains(currActor))
+		private BestPathSearch(CompiledModel model, org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class targetActor)
 		{
-			vN.add(currActor);
+			this.model = model;
+			this.evaluation = currentEvaluation();
+			this.cn = cn;
+			this.targetActor = model.getNodeId(targetActor);
+			this.referenceSuperLanguages = getReferenceSuperLanguages(model, cn);
 		}
 		
-		if (currActor == targetActor)
+		private boolean search(org.eclipse.uml2.uml.Class currActor, EList<org.eclipse.uml2.uml.Class> vN, EList<org.eclipse.uml2.uml.Class> allowedLang)
 		{
-			int j = 0;
-			for (int i = 0; i < vN.size() - 2; i = i + 2)
+			BitSet blocked = new BitSet(model.nodes.length);
+			for (org.eclipse.uml2.uml.Class node : vN)
 			{
-				String languages = null;
-				j++;
-				if (j < vNLang.size() && vNLang.get(j).getAppliedStereotype("RootInteroperability::Language") != null)
+				blocked.set(model.getNodeId(node));
+			}
+			BitSet languages = new BitSet();
+			for (org.eclipse.uml2.uml.Class lang : allowedLang)
+			{
+				languages.set(model.index.getLanguageId(lang));
+			}
+			List<Label> found = search(model.getNodeId(currActor), blocked, languages);
+			if (found.isEmpty() && cut && !evaluation.outOfBudget)
+			{
+				// The cap may have hidden every path
+				return new PathSearch(model, cn, model.nodes[targetActor]).search(currActor, vN, allowedLang);
+			}
+			for (Label label : found)
+			{
+				report(label);
+			}
+			return !found.isEmpty();
+		}
+		
+		// Returns the paths found, at most bestPaths, in order of cost
+		private List<Label> search(int actor, BitSet blocked, BitSet languages)
+		{
+			PriorityQueue<Label> queue = new PriorityQueue<Label>();
+			queue.add(new Label(null, -1, actor, languages, 0, sequence++));
+			List<Label> found = new ArrayList<Label>();
+			while (!queue.isEmpty() && found.size() < bestPaths)
+			{
+				Label label = queue.poll();
+				if (label.actor == targetActor)
 				{
-					languages = String.format("%s", vNLang.get(j).getName());
-					// For statistics
-					if (!lang_stats.contains(vNLang.get(j)))
-					{
-						lang_stats.add(vNLang.get(j));
-					}
+					found.add(label);
+					continue;
 				}
-				j++;
-				while (j < vNLang.size() && vNLang.get(j).getAppliedStereotype("RootInteroperability::Language") != null)
+				if (!expand(label))
 				{
-					languages = String.format("%s - %s", languages, vNLang.get(j).getName());
-					// For statistics
-					if (!lang_stats.contains(vNLang.get(j)))
-					{
-						lang_stats.add(vNLang.get(j));
-					}
-					j++;
+					continue;
 				}
-				out("%s <--> %s <--> %s (%s)", vN.get(i).getName(), vN.get(i+1).getName(), vN.get(i+2).getName(), languages);
-				
-				// For statistics
-				if (!actors_stats.contains(vN.get(i)))
+				evaluation.expanded.set(label.actor);
+				if (metrics != null)
 				{
-					actors_stats.add(vN.get(i));
+					metrics.expanded(cn, label.hops);
 				}
-				if (!mps_stats.contains(vN.get(i+1)))
+				if (evaluation.exhausted())
 				{
-					mps_stats.add(vN.get(i+1));
+					break;
 				}
-				numSubCNTotal++;
-				
-				// MultiGraph drawing
-				if (flag_language == true && flag_address == true && drawGraph == true)
+				if (label.hops >= maxHops)
 				{
-					if (graph.getNode(vN.get(i).getQualifiedName()) == null)
-					{
-						Node node = graph.addNode(vN.get(i).getQualifiedName());
-						node.addAttribute("ui.label", vN.get(i).getName());
-						node.addAttribute("ui.class", "actor");
-					}
-					if (graph.getNode(vN.get(i+1).getQualifiedName()) == null)
-					{
-						Node node = graph.addNode(vN.get(i+1).getQualifiedName());
-						node.addAttribute("ui.label", vN.get(i+1).getName());
-						node.addAttribute("ui.class", "mps");
-					}
-					if (graph.getNode(vN.get(i+2).getQualifiedName()) == null)
-					{
-						Node node = graph.addNode(vN.get(i+2).getQualifiedName());
-						node.addAttribute("ui.label", vN.get(i+2).getName());
-						node.addAttribute("ui.class", "actor");
-					}
-					String edgeLabel = String.format("#%d", numCNSatisfied+1);
-					String edgeId = String.format("%s_%s-%s", cn.getName(), vN.get(i).getName(), vN.get(i+1).getName());
-					if (graph.getEdge(edgeId) == null)
+					evaluation.truncations++;
+					continue;
+				}
+				for (int mps : model.mpsOfActor[label.actor])
+				{
+					if (blocked.get(mps) || label.crosses(mps))
 					{
-						Edge edge = graph.addEdge(edgeId, vN.get(i).getQualifiedName(), vN.get(i+1).getQualifiedName());
-						edge.addAttribute("ui.label", edgeLabel);
+						continue;
 					}
-					edgeId = String.format("%s_%s-%s", cn.getName(), vN.get(i+1).getName(), vN.get(i+2).getName());
-					if (graph.getEdge(edgeId) == null)
+					for (int next : model.actorsOfMPS[mps])
 					{
-						Edge edge = graph.addEdge(edgeId, vN.get(i+1).getQualifiedName(), vN.get(i+2).getQualifiedName());
-						edge.addAttribute("ui.label", edgeLabel);
+						if (blocked.get(next) || label.crosses(next))
+						{
+							continue;
+						}
+						BitSet nextLanguages = ReachabilitySearch.getAllowedLanguages(model, referenceSuperLanguages, label.actor, next, mps, label.languages);
+						if ((!nextLanguages.isEmpty() || evaluation.flagLanguage == false) && conditionsForSatisfaction(label.actor, next, mps))
+						{
+							long cost = label.cost + pathCost.cost(model, label.actor, mps, next, label.languages, nextLanguages);
+							queue.add(new Label(label, mps, next, nextLanguages, cost, sequence++));
+						}
 					}
 				}
 			}
-			out("");
-			return true; // Target actor reached
+			return found;
 		}
-		else
+		
+		// Counts an expansion of the actor of label with its allowed languages, and returns whether it is under
+		// the cap
+		private boolean expand(Label label)
 		{
-			// Remove mps which are contained in vN (visited nodes)
-			for (org.eclipse.uml2.uml.Class mps : getAssociations(currActor, "RootInteroperability::Message-Passing System", null, null))
+			Map<BitSet, Integer> counts = expanded.get(label.actor);
+			if (counts == null)
 			{
-				if (vN.contains(mps))
-				{
-					currActorMPS.remove(mps);
-				}
+				counts = new HashMap<BitSet, Integer>();
+				expanded.put(label.actor, counts);
 			}
-			
-			for (org.eclipse.uml2.uml.Class mps : currActorMPS)
+			Integer count = counts.get(label.languages);
+			count = count != null ? count + 1 : 1;
+			counts.put(label.languages, count);
+			if (count > bestPaths)
 			{
-				mpsActor = getAssociations(mps, "RootInteroperability::Actor", null, null);
-				
-				// Remove actors which are contained in vN (visited nodes)
-				for (org.eclipse.uml2.uml.Class actor : getAssociations(mps, "RootInteroperability::Actor", null, null))
+				cut = true;
+				return false;
+			}
+			return true;
+		}
+		
+		// Rule 3, evaluated once per hop
+		private boolean conditionsForSatisfaction(int currActor, int nextActor, int mps)
+		{
+			Long key = ((long) currActor * model.nodes.length + mps) * model.nodes.length + nextActor;
+			Boolean result = conditions.get(key);
+			if (result == null)
+			{
+				result = interoperability.conditionsForSatisfaction(cn, model.nodes[currActor], model.nodes[nextActor], model.nodes[mps]);
+				conditions.put(key, result);
+			}
+			return result;
+		}
+		
+		// Prints the path of a label
+		private void report(Label last)
+		{
+			int numLanguages = 0;
+			for (Label label = last; label.parent != null; label = label.parent)
+			{
+				numLanguages += label.languages.cardinality();
+			}
+			org.eclipse.uml2.uml.Class[] vN = new org.eclipse.uml2.uml.Class[2 * last.hops + 1];
+			org.eclipse.uml2.uml.Class[] vNLang = new org.eclipse.uml2.uml.Class[last.hops + numLanguages];
+			int i = vN.length - 1;
+			int k = vNLang.length;
+			Label label = last;
+			for (; label.parent != null; label = label.parent)
+			{
+				vN[i--] = model.nodes[label.actor];
+				vN[i--] = model.nodes[label.mps];
+				k -= label.languages.cardinality() + 1;
+				int j = k;
+				vNLang[j++] = model.nodes[label.mps];
+				for (int lang = label.languages.nextSetBit(0); lang >= 0; lang = label.languages.nextSetBit(lang + 1))
 				{
-					if (vN.contains(actor))
-					{
-						mpsActor.remove(actor);
-					}
-				}
-				
-				for (org.eclipse.uml2.uml.Class actor : mpsActor)
-				{
-					// For debugging
-//					out("Current Actor: %s - Next Actor: %s - MPS: %s", currActor.getName(), actor.getName(), mps.getName());
-					allowedLanguages = getAllowedLanguages(cn, currActor, actor, mps, allowedLang);
-					// For debugging
-//					for (org.eclipse.uml2.uml.Class _class : allowedLanguages)
-//					{
-//						out("Allowed language: %s", _class.getName());
-//					}
-					if ((allowedLanguages.isEmpty() == false || flag_language == false) && (conditionsForSatisfaction(cn, currActor, actor, mps)))
-					{
-						// Add MPS and actors to the visited nodes
-						if (!vN.contains(mps))
-						{
-							vN.add(mps);
-						}
-						if (!vN.contains(actor))
-						{
-							vN.add(actor);
-						}
-						// Save allowed languages to the allowed languages visited nodes
-						vNLang.add(mps); // To distinguish between allowedLanguages from different actors later
-						for (org.eclipse.uml2.uml.Class _class : allowedLanguages)
-						{
-							vNLang.add(_class);
-						}
-						
-						if (isSatisfied(cn, actor, targetActor, vN, allowedLanguages, vNLang)) // Recursion
-						{
-							satisfied = true;
-						}
-						vN.remove(actor);
-						vN.remove(vN.lastIndexOf(mps));
-						while (vNLang.size() > 0 && vNLang.get(vNLang.size()-1).getAppliedStereotype("RootInteroperability::Language") != null)
-						{
-							vNLang.remove(vNLang.size()-1); // Remove language
-						}
-						vNLang.remove(vNLang.size()-1); // Remove mps
-					}
+					vNLang[j++] = model.index.getLanguage(lang);
 				}
 			}
+			vN[0] = model.nodes[label.actor];
+			pathFound(cn, vN, vNLang);
 		}
-		return satisfied;
 	}
 	
 	// Rule 3
 	protected static boolean conditionsForSatisfaction(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps)
 	{
-		EList<org.eclipse.uml2.uml.Class> emptyList = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> addressingNeed = getAssociations(cn, "RootInteroperability::Communication Need", null, "addressingNeed");
-		if (actorsAreAvailable(currActor, nextActor, mps) && noDistortedMessage(currActor, nextActor, mps) && noDroppedMessage(currActor, nextActor, mps))
+		long start = ruleStart(3);
+		try
 		{
-			if (addressingSatisfied(currActor, nextActor, mps, emptyList) || flag_address == false)
+			if (actorsAreAvailable(currActor, nextActor, mps) && noDistortedMessage(currActor, nextActor, mps) && noDroppedMessage(currActor, nextActor, mps))
 			{
-				return true;
-			}
-			else
-			{
-				if (addressingNeed.size() > 0)
+				if (currentEvaluation().flagAddress == false || addressingNeedSatisfied(cn, currActor, nextActor, mps))
 				{
-					for (org.eclipse.uml2.uml.Class subcn : addressingNeed)
-					{
-						if (communicationNeedSatisfied(subcn) == false)
-						{
-							return false;
-						}
-					}
 					return true;
 				}
 				else
@@ -611,296 +3369,487 @@ public class interoperability
 					return false;
 				}
 			}
+			else
+			{
+				return false;
+			}
+		}
+		finally
+		{
+			ruleEnd(3, start);
+		}
+	}
+	
+	// Rule 3 (addressing): Rule 14, or else every sub Communication Need (addressingNeed) satisfied
+	protected static boolean addressingNeedSatisfied(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps)
+	{
+		EList<org.eclipse.uml2.uml.Class> emptyList = new BasicEList<org.eclipse.uml2.uml.Class>();
+		EList<org.eclipse.uml2.uml.Class> addressingNeed = getNeighbors(cn, "RootInteroperability::Communication Need", null, "addressingNeed");
+		if (addressingSatisfied(currActor, nextActor, mps, emptyList))
+		{
+			return true;
 		}
 		else
 		{
+			if (addressingNeed.size() > 0)
+			{
+				for (org.eclipse.uml2.uml.Class subcn : addressingNeed)
+				{
+					if (subCommunicationNeedSatisfied(subcn) == false)
+					{
+						return false;
+					}
+				}
+				return true;
+			}
+			else
+			{
+				return false;
+			}
+		}
+	}
+	
+	// addressingNeedSatisfied with the address flag of e on, as the sub Communication Needs are evaluated
+	// with the flags of the caller
+	private static boolean addressingConditions(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, Evaluation e)
+	{
+		boolean flagAddress = e.flagAddress;
+		e.flagAddress = true;
+		try
+		{
+			return addressingNeedSatisfied(cn, currActor, nextActor, mps);
+		}
+		finally
+		{
+			e.flagAddress = flagAddress;
+		}
+	}
+	
+	// Rule 3 for a sub Communication Need (addressingNeed). It is evaluated (and reported) once per top-level
+	// Communication Need and flags, and does not change the flags of the caller. A Communication Need that
+	// depends on itself is not satisfied through itself; results that rely on an outer Communication Need
+	// still being evaluated are not kept
+	protected static boolean subCommunicationNeedSatisfied(org.eclipse.uml2.uml.Class subcn)
+	{
+		Evaluation e = currentEvaluation();
+		e.subCNCalls++;
+		int flags = (e.flagLanguage ? 2 : 0) + (e.flagAddress ? 1 : 0);
+		Boolean[] results = e.subCNResults.get(subcn);
+		if (results != null && results[flags] != null)
+		{
+			return results[flags];
+		}
+		int depth = e.cnStack.indexOf(subcn);
+		if (depth >= 0)
+		{
+			// Cycle
+			e.cycleDepth = Math.min(e.cycleDepth, depth);
 			return false;
 		}
+		
+		boolean flagLanguage = e.flagLanguage;
+		boolean flagAddress = e.flagAddress;
+		int truncations = e.truncations;
+		boolean satisfied;
+		depth = e.cnStack.size();
+		e.cnStack.add(subcn);
+		try
+		{
+			satisfied = communicationNeedSatisfied(subcn);
+		}
+		finally
+		{
+			e.cnStack.remove(depth);
+			e.flagLanguage = flagLanguage;
+			e.flagAddress = flagAddress;
+		}
+		if (e.cycleDepth >= depth && e.truncations == truncations)
+		{
+			e.cycleDepth = Integer.MAX_VALUE;
+			if (results == null)
+			{
+				results = new Boolean[4];
+				e.subCNResults.put(subcn, results);
+			}
+			results[flags] = satisfied;
+		}
+		return satisfied;
 	}
 	
 	// Rule 4
 	protected static boolean actorsAreAvailable(org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps)
 	{
-		boolean currActorA = (boolean) currActor.getValue(currActor.getAppliedStereotype("RootInteroperability::Actor"), "isAvailable");
-		boolean nextActorA = (boolean) nextActor.getValue(nextActor.getAppliedStereotype("RootInteroperability::Actor"), "isAvailable");
-		boolean mpsA = (boolean) mps.getValue(mps.getAppliedStereotype("RootInteroperability::Message-Passing System"), "isAvailable");
-
-		if (currActorA && nextActorA && mpsA)
+		long start = ruleStart(4);
+		try
 		{
-			return true;
+			boolean currActorA = getFlag(currActor, CompiledModel.AVAILABLE, "RootInteroperability::Actor", "isAvailable");
+			boolean nextActorA = getFlag(nextActor, CompiledModel.AVAILABLE, "RootInteroperability::Actor", "isAvailable");
+			boolean mpsA = getFlag(mps, CompiledModel.AVAILABLE, "RootInteroperability::Message-Passing System", "isAvailable");
+
+			if (currActorA && nextActorA && mpsA)
+			{
+				return true;
+			}
+			else
+			{
+				return false;
+			}
 		}
-		else
+		finally
 		{
-			return false;
+			ruleEnd(4, start);
 		}
 	}
 	
 	// Rule 5
 	protected static boolean noDistortedMessage(org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps)
 	{
-		boolean currActorD = (boolean) currActor.getValue(currActor.getAppliedStereotype("RootInteroperability::Actor"), "distortsMessage");
-		boolean nextActorD = (boolean) nextActor.getValue(nextActor.getAppliedStereotype("RootInteroperability::Actor"), "distortsMessage");
-		boolean mpsD = (boolean) mps.getValue(mps.getAppliedStereotype("RootInteroperability::Message-Passing System"), "distortsMessage");
-
-		if (currActorD == false && nextActorD == false && mpsD == false)
+		long start = ruleStart(5);
+		try
 		{
-			return true;
+			boolean currActorD = getFlag(currActor, CompiledModel.DISTORTS_MESSAGE, "RootInteroperability::Actor", "distortsMessage");
+			boolean nextActorD = getFlag(nextActor, CompiledModel.DISTORTS_MESSAGE, "RootInteroperability::Actor", "distortsMessage");
+			boolean mpsD = getFlag(mps, CompiledModel.DISTORTS_MESSAGE, "RootInteroperability::Message-Passing System", "distortsMessage");
+
+			if (currActorD == false && nextActorD == false && mpsD == false)
+			{
+				return true;
+			}
+			else
+			{
+				return false;
+			}
 		}
-		else
+		finally
 		{
-			return false;
+			ruleEnd(5, start);
 		}
 	}
 	
 	// Rule 6
 	protected static boolean noDroppedMessage(org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps)
 	{
-		boolean currActorD = (boolean) currActor.getValue(currActor.getAppliedStereotype("RootInteroperability::Actor"), "dropsMessage");
-		boolean nextActorD = (boolean) nextActor.getValue(nextActor.getAppliedStereotype("RootInteroperability::Actor"), "dropsMessage");
-		boolean mpsD = (boolean) mps.getValue(mps.getAppliedStereotype("RootInteroperability::Message-Passing System"), "dropsMessage");
-
-		if (currActorD == false && nextActorD == false && mpsD == false)
+		long start = ruleStart(6);
+		try
 		{
-			return true;
+			boolean currActorD = getFlag(currActor, CompiledModel.DROPS_MESSAGE, "RootInteroperability::Actor", "dropsMessage");
+			boolean nextActorD = getFlag(nextActor, CompiledModel.DROPS_MESSAGE, "RootInteroperability::Actor", "dropsMessage");
+			boolean mpsD = getFlag(mps, CompiledModel.DROPS_MESSAGE, "RootInteroperability::Message-Passing System", "dropsMessage");
+
+			if (currActorD == false && nextActorD == false && mpsD == false)
+			{
+				return true;
+			}
+			else
+			{
+				return false;
+			}
 		}
-		else
+		finally
 		{
-			return false;
+			ruleEnd(6, start);
 		}
 	}
 	
 	// Rule 8
 	protected static EList<org.eclipse.uml2.uml.Class> getAllowedLanguages(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, EList<org.eclipse.uml2.uml.Class> allowedLang)
 	{
-		EList<org.eclipse.uml2.uml.Class> finalAllowedLang = commonLanguages(cn, currActor, nextActor, mps, allowedLang);
-		
-		// Union
-		for (org.eclipse.uml2.uml.Class classLang : translatedLanguages(cn, currActor, nextActor, mps, allowedLang))
+		long start = ruleStart(8);
+		try
 		{
-			if (!finalAllowedLang.contains(classLang))
+			EList<org.eclipse.uml2.uml.Class> finalAllowedLang = commonLanguages(cn, currActor, nextActor, mps, allowedLang);
+			
+			// Union
+			for (org.eclipse.uml2.uml.Class classLang : translatedLanguages(cn, currActor, nextActor, mps, allowedLang))
 			{
-				finalAllowedLang.add(classLang);
+				if (!finalAllowedLang.contains(classLang))
+				{
+					finalAllowedLang.add(classLang);
+				}
 			}
+			return finalAllowedLang;
+		}
+		finally
+		{
+			ruleEnd(8, start);
 		}
-		return finalAllowedLang;
 	}
 	
 	// Rule 9
 	protected static EList<org.eclipse.uml2.uml.Class> commonLanguages(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, EList<org.eclipse.uml2.uml.Class> allowedLang)
 	{
-		EList<org.eclipse.uml2.uml.Class> commonLang = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> emptyList = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> currActorLang = getAssociations(currActor, "RootInteroperability::Language", null, null);
-		EList<org.eclipse.uml2.uml.Class> nextActorLang = getAssociations(nextActor, "RootInteroperability::Language", null, null);
-		EList<org.eclipse.uml2.uml.Class> referenceLang = getAssociations(cn, "RootInteroperability::Reference Language", null, null);
-		referenceLang.addAll(getAssociations(cn, "RootInteroperability::Language", null, null));
-		
-		for (org.eclipse.uml2.uml.Class lang : allowedLang)
+		long start = ruleStart(9);
+		try
 		{
-			if (currActorLang.contains(lang) && nextActorLang.contains(lang) && compatibleWithMPS(lang, mps))
+			EList<org.eclipse.uml2.uml.Class> commonLang = new BasicEList<org.eclipse.uml2.uml.Class>();
+			EList<org.eclipse.uml2.uml.Class> currActorLang = getNeighbors(currActor, "RootInteroperability::Language", null, null);
+			EList<org.eclipse.uml2.uml.Class> nextActorLang = getNeighbors(nextActor, "RootInteroperability::Language", null, null);
+			EList<org.eclipse.uml2.uml.Class> referenceLang = getAssociations(cn, "RootInteroperability::Reference Language", null, null);
+			referenceLang.addAll(getNeighbors(cn, "RootInteroperability::Language", null, null));
+			
+			for (org.eclipse.uml2.uml.Class lang : allowedLang)
 			{
-				if (referenceLang.size() == 1)
+				if (currActorLang.contains(lang) && nextActorLang.contains(lang) && compatibleWithMPS(lang, mps))
 				{
-					emptyList.clear();
-					if (getSuperLanguage(referenceLang.get(0), emptyList).contains(lang))
+					if (referenceLang.size() == 1)
 					{
-						commonLang.add(lang);
+						if (isSuperLanguage(referenceLang.get(0), lang))
+						{
+							commonLang.add(lang);
+						}
 					}
 				}
 			}
+			return commonLang;
+		}
+		finally
+		{
+			ruleEnd(9, start);
 		}
-		return commonLang;
 	}
 	
 	// Rule 10
 	protected static EList<org.eclipse.uml2.uml.Class> translatedLanguages(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, EList<org.eclipse.uml2.uml.Class> allowedLang)
 	{
-		EList<org.eclipse.uml2.uml.Class> emptyList = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> superLanguages = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> translatedLanguagesList = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> currActorLang = getAssociations(currActor, "RootInteroperability::Language", null, null);
-		EList<org.eclipse.uml2.uml.Class> nextActorLang = getAssociations(nextActor, "RootInteroperability::Language", null, null);
-		EList<org.eclipse.uml2.uml.Class> referenceLang = getAssociations(cn, "RootInteroperability::Reference Language", null, null);
-		referenceLang.addAll(getAssociations(cn, "RootInteroperability::Language", null, null));
-
-		for (org.eclipse.uml2.uml.Class lang : currActorLang)
+		long start = ruleStart(10);
+		try
 		{
-			EList<org.eclipse.uml2.uml.Class> langTranslation = getAssociations(lang, "RootInteroperability::Language Translation", null, null);
-			for (org.eclipse.uml2.uml.Class langTrans : langTranslation)
+			EList<org.eclipse.uml2.uml.Class> translatedLanguagesList = new BasicEList<org.eclipse.uml2.uml.Class>();
+			EList<org.eclipse.uml2.uml.Class> currActorLang = getNeighbors(currActor, "RootInteroperability::Language", null, null);
+			EList<org.eclipse.uml2.uml.Class> nextActorLang = getNeighbors(nextActor, "RootInteroperability::Language", null, null);
+			EList<org.eclipse.uml2.uml.Class> referenceLang = getAssociations(cn, "RootInteroperability::Reference Language", null, null);
+			referenceLang.addAll(getNeighbors(cn, "RootInteroperability::Language", null, null));
+
+			for (org.eclipse.uml2.uml.Class lang : currActorLang)
 			{
-				EList<org.eclipse.uml2.uml.Class> actorTrans = getAssociations(langTrans, "RootInteroperability::Actor", null, null);
-				EList<org.eclipse.uml2.uml.Class> nextLang = getAssociations(langTrans, "RootInteroperability::Language", null, null);
-				boolean correctLT = (boolean) langTrans.getValue(langTrans.getAppliedStereotype("RootInteroperability::Language Translation"), "correct");
-				
-				for (org.eclipse.uml2.uml.Class nLang : nextLang)
+				EList<org.eclipse.uml2.uml.Class> langTranslation = getNeighbors(lang, "RootInteroperability::Language Translation", null, null);
+				for (org.eclipse.uml2.uml.Class langTrans : langTranslation)
 				{
-					if (nextActorLang.contains(nLang) && allowedLang.contains(lang) && compatibleWithMPS(nLang, mps) && correctLT && actorTrans.contains(currActor) && lang != nLang)
+					EList<org.eclipse.uml2.uml.Class> actorTrans = getNeighbors(langTrans, "RootInteroperability::Actor", null, null);
+					EList<org.eclipse.uml2.uml.Class> nextLang = getNeighbors(langTrans, "RootInteroperability::Language", null, null);
+					boolean correctLT = isCorrect(langTrans);
+					
+					for (org.eclipse.uml2.uml.Class nLang : nextLang)
 					{
-						if (referenceLang.size() == 1)
+						if (nextActorLang.contains(nLang) && allowedLang.contains(lang) && compatibleWithMPS(nLang, mps) && correctLT && actorTrans.contains(currActor) && lang != nLang)
 						{
-							emptyList.clear();
-							superLanguages = getSuperLanguage(referenceLang.get(0), emptyList);
-							if ((superLanguages.contains(lang)) && (superLanguages.contains(nLang)))
+							if (referenceLang.size() == 1)
 							{
-								if (!translatedLanguagesList.contains(nLang))
+								if (isSuperLanguage(referenceLang.get(0), lang) && isSuperLanguage(referenceLang.get(0), nLang))
 								{
-									translatedLanguagesList.add(nLang);
+									if (!translatedLanguagesList.contains(nLang))
+									{
+										translatedLanguagesList.add(nLang);
+									}
 								}
 							}
 						}
 					}
 				}
 			}
+			return translatedLanguagesList;
+		}
+		finally
+		{
+			ruleEnd(10, start);
 		}
-		return translatedLanguagesList;
 	}
 	
 	// Rule 11
 	protected static boolean compatibleWithMPS(org.eclipse.uml2.uml.Class lang, org.eclipse.uml2.uml.Class mps)
 	{
-		boolean compatible = false;
-		EList<org.eclipse.uml2.uml.Class> emptyList = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> mpsLang = getAssociations(mps, "RootInteroperability::Language", null, "format");
-		EList<org.eclipse.uml2.uml.Class> carryingLangList = getCarryingLanguage(lang, emptyList);
-
-		for (org.eclipse.uml2.uml.Class carryingLang : carryingLangList)
+		long start = ruleStart(11);
+		try
 		{
-			if (mpsLang.contains(carryingLang))
+			ModelIndex currentIndex = getIndex();
+			if (currentIndex != null)
+			{
+				return currentIndex.isCompatible(lang, mps);
+			}
+			
+			boolean compatible = false;
+			EList<org.eclipse.uml2.uml.Class> emptyList = new BasicEList<org.eclipse.uml2.uml.Class>();
+			EList<org.eclipse.uml2.uml.Class> mpsLang = getNeighbors(mps, "RootInteroperability::Language", null, "format");
+			EList<org.eclipse.uml2.uml.Class> carryingLangList = getCarryingLanguage(lang, emptyList);
+
+			for (org.eclipse.uml2.uml.Class carryingLang : carryingLangList)
+			{
+				if (mpsLang.contains(carryingLang))
+				{
+					compatible = true;
+				}
+			}
+			if (compatible)
+			{
+				return true;
+			}
+			else
 			{
-				compatible = true;
+				return false;
 			}
 		}
-		if (compatible)
+		finally
 		{
-			return true;
+			ruleEnd(11, start);
 		}
-		else
+	}
+	
+	// Whether superLang is lang or one of its super languages (Rule 12)
+	protected static boolean isSuperLanguage(org.eclipse.uml2.uml.Class lang, org.eclipse.uml2.uml.Class superLang)
+	{
+		ModelIndex currentIndex = getIndex();
+		if (currentIndex != null)
 		{
-			return false;
+			return currentIndex.isSuperLanguage(lang, superLang);
 		}
+		return getSuperLanguage(lang, new BasicEList<org.eclipse.uml2.uml.Class>()).contains(superLang);
 	}
 	
 	// Rule 12
 	protected static EList<org.eclipse.uml2.uml.Class> getSuperLanguage(org.eclipse.uml2.uml.Class lang, EList<org.eclipse.uml2.uml.Class> vN)
 	{
-		EList<org.eclipse.uml2.uml.Class> allSuperLang = new BasicEList<org.eclipse.uml2.uml.Class>(); // List that contains all the super languages of lang
-		EList<org.eclipse.uml2.uml.Class> superLang = getAssociations(lang, null, null, "superLanguage"); // List that contains the direct super languages of lang
-		EList<org.eclipse.uml2.uml.Class> superLangAux = new BasicEList<org.eclipse.uml2.uml.Class>();
-		superLangAux.addAll(superLang);
-		
-		if (!vN.contains(lang))
-		{
-			vN.add(lang);
-		}
-		
-		// Remove languages which are contained in vN (visited nodes)
-		for (org.eclipse.uml2.uml.Class classLang : superLang)
+		long start = ruleStart(12);
+		try
 		{
-			if (vN.contains(classLang))
+			EList<org.eclipse.uml2.uml.Class> allSuperLang = new BasicEList<org.eclipse.uml2.uml.Class>(); // List that contains all the super languages of lang
+			EList<org.eclipse.uml2.uml.Class> superLang = getNeighbors(lang, null, null, "superLanguage"); // List that contains the direct super languages of lang
+			EList<org.eclipse.uml2.uml.Class> superLangAux = new BasicEList<org.eclipse.uml2.uml.Class>();
+			superLangAux.addAll(superLang);
+			
+			if (!vN.contains(lang))
 			{
-				superLangAux.remove(classLang);
+				vN.add(lang);
 			}
-		}
-		
-		// Union language
-		if (!allSuperLang.contains(lang))
-		{
-			allSuperLang.add(lang);
-		}
-				
-		// Union superLanguage
-		for (org.eclipse.uml2.uml.Class classLang : superLang)
-		{
-			if (!allSuperLang.contains(classLang))
+			
+			// Remove languages which are contained in vN (visited nodes)
+			for (org.eclipse.uml2.uml.Class classLang : superLang)
 			{
-				allSuperLang.add(classLang);
+				if (vN.contains(classLang))
+				{
+					superLangAux.remove(classLang);
+				}
 			}
-		}
-		
-		// Find nodes of the previous super languages
-		for (org.eclipse.uml2.uml.Class classLang : superLangAux)
-		{
-			if (!vN.contains(classLang))
+			
+			// Union language
+			if (!allSuperLang.contains(lang))
+			{
+				allSuperLang.add(lang);
+			}
+					
+			// Union superLanguage
+			for (org.eclipse.uml2.uml.Class classLang : superLang)
+			{
+				if (!allSuperLang.contains(classLang))
+				{
+					allSuperLang.add(classLang);
+				}
+			}
+			
+			// Find nodes of the previous super languages
+			for (org.eclipse.uml2.uml.Class classLang : superLangAux)
 			{
-				vN.add(classLang);
-				for (org.eclipse.uml2.uml.Class classLang1 : getSuperLanguage(classLang, vN)) // Recursion
+				if (!vN.contains(classLang))
 				{
-					if (!allSuperLang.contains(classLang1))
+					vN.add(classLang);
+					for (org.eclipse.uml2.uml.Class classLang1 : getSuperLanguage(classLang, vN)) // Recursion
 					{
-						allSuperLang.add(classLang1);
+						if (!allSuperLang.contains(classLang1))
+						{
+							allSuperLang.add(classLang1);
+						}
 					}
 				}
 			}
+			return allSuperLang;
+		}
+		finally
+		{
+			ruleEnd(12, start);
 		}
-		return allSuperLang;
 	}
 	
 	// Rule 13
 	protected static EList<org.eclipse.uml2.uml.Class> getCarryingLanguage(org.eclipse.uml2.uml.Class lang, EList<org.eclipse.uml2.uml.Class> vN)
 	{
-		EList<org.eclipse.uml2.uml.Class> allCarryingLang = new BasicEList<org.eclipse.uml2.uml.Class>(); // List that contains all the carrying languages of lang
-		EList<org.eclipse.uml2.uml.Class> carryingLang = getAssociations(lang, null, null, "carryingLanguage"); // List that contains the direct carrying languages of lang
-		EList<org.eclipse.uml2.uml.Class> carryingLangAux = new BasicEList<org.eclipse.uml2.uml.Class>();
-		carryingLangAux.addAll(carryingLang);
-		
-		if (!vN.contains(lang))
-		{
-			vN.add(lang);
-		}
-		
-		// Remove languages which are contained in vN (visited nodes)
-		for (org.eclipse.uml2.uml.Class classLang : carryingLang)
+		long start = ruleStart(13);
+		try
 		{
-			if (vN.contains(classLang))
+			EList<org.eclipse.uml2.uml.Class> allCarryingLang = new BasicEList<org.eclipse.uml2.uml.Class>(); // List that contains all the carrying languages of lang
+			EList<org.eclipse.uml2.uml.Class> carryingLang = getNeighbors(lang, null, null, "carryingLanguage"); // List that contains the direct carrying languages of lang
+			EList<org.eclipse.uml2.uml.Class> carryingLangAux = new BasicEList<org.eclipse.uml2.uml.Class>();
+			carryingLangAux.addAll(carryingLang);
+			
+			if (!vN.contains(lang))
+			{
+				vN.add(lang);
+			}
+			
+			// Remove languages which are contained in vN (visited nodes)
+			for (org.eclipse.uml2.uml.Class classLang : carryingLang)
+			{
+				if (vN.contains(classLang))
+				{
+					carryingLangAux.remove(classLang);
+				}
+			}
+			
+			// Union language
+			if (!allCarryingLang.contains(lang))
 			{
-				carryingLangAux.remove(classLang);
+				allCarryingLang.add(lang);
 			}
-		}
-		
-		// Union language
-		if (!allCarryingLang.contains(lang))
-		{
-			allCarryingLang.add(lang);
-		}
-		
-		// Union carryingLanguage
-		for (org.eclipse.uml2.uml.Class classLang : carryingLang)
-		{
-			if (!allCarryingLang.contains(classLang))
+			
+			// Union carryingLanguage
+			for (org.eclipse.uml2.uml.Class classLang : carryingLang)
 			{
-				allCarryingLang.add(classLang);
+				if (!allCarryingLang.contains(classLang))
+				{
+					allCarryingLang.add(classLang);
+				}
 			}
-		}
-				
-		// Find nodes of the previous carrying languages
-		for (org.eclipse.uml2.uml.Class classLang : carryingLangAux)
-		{
-			if (!vN.contains(classLang))
+					
+			// Find nodes of the previous carrying languages
+			for (org.eclipse.uml2.uml.Class classLang : carryingLangAux)
 			{
-				vN.add(classLang);
-				for (org.eclipse.uml2.uml.Class classLang1 : getCarryingLanguage(classLang, vN)) // Recursion
+				if (!vN.contains(classLang))
 				{
-					if (!allCarryingLang.contains(classLang1))
+					vN.add(classLang);
+					for (org.eclipse.uml2.uml.Class classLang1 : getCarryingLanguage(classLang, vN)) // Recursion
 					{
-						allCarryingLang.add(classLang1);
+						if (!allCarryingLang.contains(classLang1))
+						{
+							allCarryingLang.add(classLang1);
+						}
 					}
 				}
 			}
+			
+			return allCarryingLang;
+		}
+		finally
+		{
+			ruleEnd(13, start);
 		}
-		
-		return allCarryingLang;
 	}
 	
 	// Rule 14
 	protected static boolean addressingSatisfied(org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, EList<org.eclipse.uml2.uml.Class> vN)
 	{
-		if (fixedMPS(mps) || addressable(currActor, nextActor, mps, vN))
+		long start = ruleStart(14);
+		try
 		{
-			return true;
+			if (fixedMPS(mps) || addressable(currActor, nextActor, mps, vN))
+			{
+				return true;
+			}
+			else
+			{
+				return false;
+			}
 		}
-		else
+		finally
 		{
-			return false;
+			ruleEnd(14, start);
 		}
 	}
 	
@@ -908,178 +3857,237 @@ public class interoperability
 	// Rule 15
 	protected static boolean fixedMPS(org.eclipse.uml2.uml.Class mps)
 	{
-		return (boolean) mps.getValue(mps.getAppliedStereotype("RootInteroperability::Message-Passing System"), "fixed");
+		long start = ruleStart(15);
+		try
+		{
+			return getFlag(mps, CompiledModel.FIXED, "RootInteroperability::Message-Passing System", "fixed");
+		}
+		finally
+		{
+			ruleEnd(15, start);
+		}
 	}
 	
 	// Rule 16
 	protected static boolean addressable(org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, EList<org.eclipse.uml2.uml.Class> vN)
 	{
-		EList<org.eclipse.uml2.uml.Class> currActorKnownAddress = getAssociations(currActor, "RootInteroperability::Address", null, "knownAddress");
-		EList<org.eclipse.uml2.uml.Class> nextActorKnownAddress = getAssociations(nextActor, "RootInteroperability::Address", null, "knownAddress");
-		EList<org.eclipse.uml2.uml.Class> currActorOwnAddress = getAssociations(currActor, "RootInteroperability::Address", null, "identifier");
-		EList<org.eclipse.uml2.uml.Class> nextActorOwnAddress = getAssociations(nextActor, "RootInteroperability::Address", null, "identifier");
-		
-		for (org.eclipse.uml2.uml.Class address : currActorKnownAddress)
+		long start = ruleStart(16);
+		try
 		{
-			if (nextActorOwnAddress.contains(address) && (validAddressOnMPS(address, mps) || addressTranslatorExists(currActor, nextActor, mps, vN)))
+			CompiledModel model = getIndex() != null ? getCompiledModel() : null;
+			int currId = model != null ? model.getNodeId(currActor) : -1;
+			int nextId = model != null ? model.getNodeId(nextActor) : -1;
+			int mpsId = model != null ? model.getNodeId(mps) : -1;
+			if (currId >= 0 && nextId >= 0 && mpsId >= 0)
 			{
-				return true;
+				return model.addressing.addressable(currId, nextId, mpsId);
 			}
-		}
-		for (org.eclipse.uml2.uml.Class address : nextActorKnownAddress)
-		{
-			if (currActorOwnAddress.contains(address) && (validAddressOnMPS(address, mps) || addressTranslatorExists(currActor, nextActor, mps, vN)))
+			
+			EList<org.eclipse.uml2.uml.Class> currActorKnownAddress = getNeighbors(currActor, "RootInteroperability::Address", null, "knownAddress");
+			EList<org.eclipse.uml2.uml.Class> nextActorKnownAddress = getNeighbors(nextActor, "RootInteroperability::Address", null, "knownAddress");
+			EList<org.eclipse.uml2.uml.Class> currActorOwnAddress = getNeighbors(currActor, "RootInteroperability::Address", null, "identifier");
+			EList<org.eclipse.uml2.uml.Class> nextActorOwnAddress = getNeighbors(nextActor, "RootInteroperability::Address", null, "identifier");
+			
+			for (org.eclipse.uml2.uml.Class address : currActorKnownAddress)
 			{
-				return true;
+				if (nextActorOwnAddress.contains(address) && (validAddressOnMPS(address, mps) || addressTranslatorExists(currActor, nextActor, mps, vN)))
+				{
+					return true;
+				}
+			}
+			for (org.eclipse.uml2.uml.Class address : nextActorKnownAddress)
+			{
+				if (currActorOwnAddress.contains(address) && (validAddressOnMPS(address, mps) || addressTranslatorExists(currActor, nextActor, mps, vN)))
+				{
+					return true;
+				}
 			}
+			return false;
+		}
+		finally
+		{
+			ruleEnd(16, start);
 		}
-		return false;
 	}
 	
 	// Rule 17
 	protected static boolean validAddressOnMPS(org.eclipse.uml2.uml.Class address, org.eclipse.uml2.uml.Class mps)
 	{
-		EList<org.eclipse.uml2.uml.Class> addressLang = getAssociations(address, "RootInteroperability::Language", null, null);
-		
-		for (org.eclipse.uml2.uml.Class language : getAssociations(mps, "RootInteroperability::Language", null, "addressingLanguage"))
+		long start = ruleStart(17);
+		try
 		{
-			if (addressLang.contains(language))
+			EList<org.eclipse.uml2.uml.Class> addressLang = getNeighbors(address, "RootInteroperability::Language", null, null);
+			
+			for (org.eclipse.uml2.uml.Class language : getNeighbors(mps, "RootInteroperability::Language", null, "addressingLanguage"))
 			{
-				return true;
+				if (addressLang.contains(language))
+				{
+					return true;
+				}
 			}
+			return false;
+		}
+		finally
+		{
+			ruleEnd(17, start);
 		}
-		return false;
 	}
 	
 	// Rule 18
 	protected static boolean addressTranslatorExists(org.eclipse.uml2.uml.Class currActor, org.eclipse.uml2.uml.Class nextActor, org.eclipse.uml2.uml.Class mps, EList<org.eclipse.uml2.uml.Class> vN)
 	{
-		EList<org.eclipse.uml2.uml.Class> mpsActors = getAssociations(mps, "RootInteroperability::Actor", null, null);
-		
-		EList<org.eclipse.uml2.uml.Class> currActorKnownAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
-		for (org.eclipse.uml2.uml.Class address : getAssociations(currActor, "RootInteroperability::Address", null, "knownAddress"))
+		long start = ruleStart(18);
+		try
 		{
-			for (org.eclipse.uml2.uml.Class lang : getAssociations(address, "RootInteroperability::Language", null, null))
+			EList<org.eclipse.uml2.uml.Class> mpsActors = getAssociations(mps, "RootInteroperability::Actor", null, null);
+			
+			EList<org.eclipse.uml2.uml.Class> currActorKnownAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
+			for (org.eclipse.uml2.uml.Class address : getNeighbors(currActor, "RootInteroperability::Address", null, "knownAddress"))
 			{
-				currActorKnownAddressL.add(lang);
+				for (org.eclipse.uml2.uml.Class lang : getNeighbors(address, "RootInteroperability::Language", null, null))
+				{
+					currActorKnownAddressL.add(lang);
+				}
 			}
-		}
-		
-		EList<org.eclipse.uml2.uml.Class> nextActorKnownAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
-		for (org.eclipse.uml2.uml.Class address : getAssociations(nextActor, "RootInteroperability::Address", null, "knownAddress"))
-		{
-			for (org.eclipse.uml2.uml.Class lang : getAssociations(address, "RootInteroperability::Language", null, null))
+			
+			EList<org.eclipse.uml2.uml.Class> nextActorKnownAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
+			for (org.eclipse.uml2.uml.Class address : getNeighbors(nextActor, "RootInteroperability::Address", null, "knownAddress"))
 			{
-				nextActorKnownAddressL.add(lang);
+				for (org.eclipse.uml2.uml.Class lang : getNeighbors(address, "RootInteroperability::Language", null, null))
+				{
+					nextActorKnownAddressL.add(lang);
+				}
 			}
-		}
-		
-		EList<org.eclipse.uml2.uml.Class> currActorOwnAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
-		for (org.eclipse.uml2.uml.Class address : getAssociations(currActor, "RootInteroperability::Address", null, "identifier"))
-		{
-			for (org.eclipse.uml2.uml.Class lang : getAssociations(address, "RootInteroperability::Language", null, null))
+			
+			EList<org.eclipse.uml2.uml.Class> currActorOwnAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
+			for (org.eclipse.uml2.uml.Class address : getNeighbors(currActor, "RootInteroperability::Address", null, "identifier"))
 			{
-				currActorOwnAddressL.add(lang);
+				for (org.eclipse.uml2.uml.Class lang : getNeighbors(address, "RootInteroperability::Language", null, null))
+				{
+					currActorOwnAddressL.add(lang);
+				}
 			}
-		}
-		
-		EList<org.eclipse.uml2.uml.Class> nextActorOwnAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
-		for (org.eclipse.uml2.uml.Class address : getAssociations(nextActor, "RootInteroperability::Address", null, "identifier"))
-		{
-			for (org.eclipse.uml2.uml.Class lang : getAssociations(address, "RootInteroperability::Language", null, null))
+			
+			EList<org.eclipse.uml2.uml.Class> nextActorOwnAddressL = new BasicEList<org.eclipse.uml2.uml.Class>();
+			for (org.eclipse.uml2.uml.Class address : getNeighbors(nextActor, "RootInteroperability::Address", null, "identifier"))
 			{
-				nextActorOwnAddressL.add(lang);
+				for (org.eclipse.uml2.uml.Class lang : getNeighbors(address, "RootInteroperability::Language", null, null))
+				{
+					nextActorOwnAddressL.add(lang);
+				}
 			}
-		}
-		
-		// Remove actors which are contained in vN (visited nodes)
-		for (org.eclipse.uml2.uml.Class actor : getAssociations(mps, "RootInteroperability::Actor", null, null))
-		{
-			if (vN.contains(actor))
+			
+			// Remove actors which are contained in vN (visited nodes)
+			for (org.eclipse.uml2.uml.Class actor : getNeighbors(mps, "RootInteroperability::Actor", null, null))
 			{
-				mpsActors.remove(actor);
+				if (vN.contains(actor))
+				{
+					mpsActors.remove(actor);
+				}
 			}
-		}
-		
-		for (org.eclipse.uml2.uml.Class actor : mpsActors)
-		{
-			for (org.eclipse.uml2.uml.Class transLang : getAssociations(actor, "RootInteroperability::Language", null, null))
+			
+			for (org.eclipse.uml2.uml.Class actor : mpsActors)
 			{
-				if (((currActorOwnAddressL.contains(transLang) && nextActorKnownAddressL.contains(transLang)) 
-				|| (nextActorOwnAddressL.contains(transLang) && currActorKnownAddressL.contains(transLang))))
+				for (org.eclipse.uml2.uml.Class transLang : getNeighbors(actor, "RootInteroperability::Language", null, null))
 				{
-					vN.add(actor);
-					if (addressingSatisfied(currActor, actor, mps, vN) && addressingSatisfied(actor, nextActor, mps, vN))
+					if (((currActorOwnAddressL.contains(transLang) && nextActorKnownAddressL.contains(transLang)) 
+					|| (nextActorOwnAddressL.contains(transLang) && currActorKnownAddressL.contains(transLang))))
 					{
-						return true;
+						// The nested checks may visit further translators: all are left out again if they fail
+						int size = vN.size();
+						vN.add(actor);
+						if (addressingSatisfied(currActor, actor, mps, vN) && addressingSatisfied(actor, nextActor, mps, vN))
+						{
+							return true;
+						}
+						while (vN.size() > size)
+						{
+							vN.remove(vN.size() - 1);
+						}
 					}
 				}
 			}
+			return false;
+		}
+		finally
+		{
+			ruleEnd(18, start);
 		}
-		return false;
 	}
 	
 	
-	// Communication need not satisfied (reasons)
-	protected static void notSatisfied(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class act1, org.eclipse.uml2.uml.Class act2)
+	// Whether a path of Rule 2 may join act1 to act2: they are in the same connected component of the compiled
+	// model. Otherwise the actors that the path search would expand from act1 are recorded as expanded, as the
+	// pair depends on them. Checked once per pair
+	private static boolean mayBeSatisfied(org.eclipse.uml2.uml.Class act1, org.eclipse.uml2.uml.Class act2)
+	{
+		CompiledModel model = getCompiledModel();
+		int id1 = model.getNodeId(act1);
+		int id2 = model.getNodeId(act2);
+		if (id1 < 0 || id2 < 0 || model.connected(id1, id2))
+		{
+			return true;
+		}
+		currentEvaluation().expanded.or(model.getComponentActors(id1));
+		return false;
+	}
+	
+	// Communication need not satisfied (reasons), from a single search with the flags off. The search is
+	// skipped when act1 and act2 are not connected (mayBeSatisfied())
+	protected static void notSatisfied(org.eclipse.uml2.uml.Class cn, org.eclipse.uml2.uml.Class act1, org.eclipse.uml2.uml.Class act2, boolean connected)
 	{
+		Evaluation e = currentEvaluation();
 		EList<org.eclipse.uml2.uml.Class> emptyList1 = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> emptyList2 = new BasicEList<org.eclipse.uml2.uml.Class>();
-		EList<org.eclipse.uml2.uml.Class> act1Languages = getAssociations(act1, "RootInteroperability::Language", null, null);
-		EList<org.eclipse.uml2.uml.Class> act1LanguagesAux = new BasicEList<org.eclipse.uml2.uml.Class>();
-		act1LanguagesAux.addAll(act1Languages);
+		EList<org.eclipse.uml2.uml.Class> act1Languages = getNeighbors(act1, "RootInteroperability::Language", null, null);
 		
-		flag_language = false;
-		flag_address = false;
-		if (isSatisfied(cn, act1, act2, emptyList1, act1Languages, emptyList2))
+		e.flagLanguage = false;
+		e.flagAddress = false;
+		int truncations = e.truncations;
+		int diagnosis = connected ? diagnose(cn, act1, act2, emptyList1, act1Languages) : 0;
+		if (LogSink.isEnabled(Category.DIAGNOSIS, Level.INFO))
 		{
-			out("Ok: Path for the communication to be possible.");
-			out("");
-			flag_language = false;
-			flag_address = true;
-			emptyList1.clear();
-			emptyList2.clear();
-			act1Languages.clear();
-			act1Languages.addAll(act1LanguagesAux);
-			if (isSatisfied(cn, act1, act2, emptyList1, act1Languages, emptyList2))
-			{
-				out("Ok: Addressing satisfied.");
-				out("Problem: No allowed languages.");
-				out("");
-				out("");
+			if (e.truncations != truncations)
+			{
+				out(Category.DIAGNOSIS, "Analysis incomplete (budget exhausted).");
 			}
-			else
+			if ((diagnosis & PATH) != 0)
 			{
-				flag_language = true;
-				flag_address = false;
-				emptyList1.clear();
-				emptyList2.clear();
-				act1Languages.clear();
-				act1Languages.addAll(act1LanguagesAux);
-				if (isSatisfied(cn, act1, act2, emptyList1, act1Languages, emptyList2))
+				out(Category.DIAGNOSIS, "Ok: Path for the communication to be possible.");
+				out(Category.DIAGNOSIS, "");
+				if ((diagnosis & ADDRESSING) != 0)
 				{
-					out("Ok: Allowed languages.");
-					out("Problem: Addressing not satisfied.");
-					out("");
-					out("");
+					out(Category.DIAGNOSIS, "Ok: Addressing satisfied.");
+					out(Category.DIAGNOSIS, "Problem: No allowed languages.");
+					out(Category.DIAGNOSIS, "");
+					out(Category.DIAGNOSIS, "");
 				}
 				else
 				{
-					out("Problem: No allowed languages.");
-					out("Problem: Addressing not satisfied.");
-					out("");
-					out("");
+					if ((diagnosis & LANGUAGES) != 0)
+					{
+						out(Category.DIAGNOSIS, "Ok: Allowed languages.");
+						out(Category.DIAGNOSIS, "Problem: Addressing not satisfied.");
+						out(Category.DIAGNOSIS, "");
+						out(Category.DIAGNOSIS, "");
+					}
+					else
+					{
+						out(Category.DIAGNOSIS, "Problem: No allowed languages.");
+						out(Category.DIAGNOSIS, "Problem: Addressing not satisfied.");
+						out(Category.DIAGNOSIS, "");
+						out(Category.DIAGNOSIS, "");
+					}
 				}
 			}
+			else
+			{
+				out(Category.DIAGNOSIS, "Problem: No path for the communication to be possible.");
+				out(Category.DIAGNOSIS, "");
+				out(Category.DIAGNOSIS, "");
+			}
 		}
-		else
-		{
-			out("Problem: No path for the communication to be possible.");
-			out("");
-			out("");
-		}
-	flag_language = true;
-	flag_address = true;
+		e.flagLanguage = true;
+		e.flagAddress = true;
 	}
 	
 
@@ -1091,15 +4099,223 @@ public class interoperability
 	
 	throws IOException 
 	{
-		if (args.length != 1) 
+		int arg = 0;
+		while (arg + 1 < args.length && args[arg].startsWith("--"))
+		{
+			if (args[arg].equals("--view"))
+			{
+				viewGraph = true;
+				drawGraph = true;
+				arg++;
+				continue;
+			}
+			if (args[arg].equals("--snapshot"))
+			{
+				useSnapshot = true;
+				arg++;
+				continue;
+			}
+			if (args[arg].equals("--watch"))
+			{
+				watchModel = true;
+				arg++;
+				continue;
+			}
+			if (arg + 2 >= args.length)
+			{
+				break;
+			}
+			if (args[arg].equals("--threads"))
+			{
+				try
+				{
+					threads = Integer.parseInt(args[arg + 1]);
+				}
+				catch (NumberFormatException nfe)
+				{
+					threads = 0;
+				}
+				if (threads < 1)
+				{
+					err("Invalid number of threads: %s", args[arg + 1]);
+					return false;
+				}
+			}
+			else if (args[arg].equals("--engine"))
+			{
+				try
+				{
+					engine = Engine.valueOf(args[arg + 1].toUpperCase());
+				}
+				catch (IllegalArgumentException iae)
+				{
+					err("Invalid engine: %s", args[arg + 1]);
+					return false;
+				}
+			}
+			else if (args[arg].equals("--log"))
+			{
+				for (String setting : args[arg + 1].split(","))
+				{
+					String[] categoryLevel = setting.split("=");
+					try
+					{
+						LogSink.setLevel(Category.valueOf(categoryLevel[0].toUpperCase()), Level.valueOf(categoryLevel[1].toUpperCase()));
+					}
+					catch (IllegalArgumentException | ArrayIndexOutOfBoundsException iae)
+					{
+						err("Invalid log setting: %s", setting);
+						return false;
+					}
+				}
+			}
+			else if (args[arg].equals("--batch"))
+			{
+				batchModels = listModels(args[arg + 1]);
+				if (batchModels.isEmpty())
+				{
+					err("No UML models: %s", args[arg + 1]);
+					return false;
+				}
+			}
+			else if (args[arg].equals("--cache"))
+			{
+				String[] fileEntries = args[arg + 1].split(",");
+				try
+				{
+					if (fileEntries.length > 1)
+					{
+						cacheEntries = Integer.parseInt(fileEntries[1]);
+					}
+				}
+				catch (NumberFormatException nfe)
+				{
+					cacheEntries = 0;
+				}
+				if (cacheEntries < 1 || fileEntries.length > 2)
+				{
+					err("Invalid result cache: %s", args[arg + 1]);
+					return false;
+				}
+				resultCache = ResultCache.open(new File(fileEntries[0]), cacheEntries);
+			}
+			else if (args[arg].equals("--metrics"))
+			{
+				metrics = new RuleMetrics();
+				metricsFile = new File(args[arg + 1]);
+			}
+			else if (args[arg].equals("--budget"))
+			{
+				for (String setting : args[arg + 1].split(","))
+				{
+					String[] limitValue = setting.split("=");
+					try
+					{
+						long value = Long.parseLong(limitValue[1]);
+						if (value <= 0)
+						{
+							throw new NumberFormatException();
+						}
+						switch (limitValue[0])
+						{
+						case "hops":
+							maxHops = (int) Math.min(value, Integer.MAX_VALUE);
+							break;
+						case "states":
+							maxStates = value;
+							break;
+						case "cn":
+							cnTime = value;
+							break;
+						case "run":
+							runDeadline = System.nanoTime() + value * 1000000;
+							break;
+						default:
+							throw new NumberFormatException();
+						}
+					}
+					catch (NumberFormatException | ArrayIndexOutOfBoundsException nfe)
+					{
+						err("Invalid budget setting: %s", setting);
+						return false;
+					}
+				}
+				budget = true;
+			}
+			else if (args[arg].equals("--best"))
+			{
+				String[] kCost = args[arg + 1].split(",");
+				try
+				{
+					bestPaths = Integer.parseInt(kCost[0]);
+					if (kCost.length > 1)
+					{
+						pathCost = PathCost.valueOf(kCost[1].toUpperCase());
+					}
+				}
+				catch (IllegalArgumentException iae)
+				{
+					bestPaths = 0;
+				}
+				if (bestPaths < 1 || kCost.length > 2)
+				{
+					err("Invalid best paths: %s", args[arg + 1]);
+					return false;
+				}
+				engine = Engine.BEST;
+			}
+			else if (args[arg].equals("--export"))
+			{
+				for (String format : args[arg + 1].split(","))
+				{
+					if (!Arrays.asList(InteroperabilityGraph.FORMATS).contains(format))
+					{
+						err("Invalid graph format: %s", format);
+						return false;
+					}
+					graphFormats.add(format);
+				}
+				drawGraph = true;
+			}
+			else
+			{
+				err("Unknown option: %s", args[arg]);
+				return false;
+			}
+			arg += 2;
+		}
+		if (args.length != arg + 1) 
 		{
 			err("Expected 1 argument.");
-			err("Usage: java -jar ... %s <dir>", interoperability.class.getSimpleName());
+			err("Usage: java -jar ... %s [--threads <n>] [--engine dfs|bfs|check|best|bidirectional] [--best <k>[,<cost>]] [--export <formats>] [--log <levels>] [--view] [--batch <models>] [--snapshot] [--metrics <file>] [--budget <limits>] [--watch] [--cache <file>[,<entries>]] <dir>", interoperability.class.getSimpleName());
 			err("where");
+			err("<n> - number of Communication Needs evaluated concurrently (default 1)");
+			err("dfs - enumerate every path of Rule 2 (default), bfs - only search one path, over (actor, allowed languages) states,");
+			err("check - enumerate every path and report the Communication Needs on which bfs disagrees,");
+			err("best - only report the <k> best paths (default 3) by <cost>: hops (default), translations or fixed");
+			err("       (fewest Message-Passing Systems that are not fixed),");
+			err("bidirectional - search one path as bfs does, from both actors at once, for long chains of actors");
+			err("<formats> - comma-separated formats (dot, graphml, dgs) of the interoperability graph files to write");
+			err("<levels> - comma-separated <category>=<level>, with categories general, multiplicity, path, diagnosis, statistics");
+			err("           and levels off, error, info (default info)");
+			err("--view - display the interoperability graph, styled with styleGraph.css from <dir> if present");
+			err("<models> - directory of .uml models, or glob of model files (e.g. models/variant*.uml), evaluated in batch;");
+			err("           results go to <dir>/<model name>/ and a summary to <dir>/summary.txt");
+			err("--snapshot - evaluate from <dir>/modelName.snapshot, compiled from the model when missing or out of date;");
+			err("           only reports which pairs of actors of each Communication Need are satisfied");
+			err("<file> - tab-separated report of the calls, time and depth of the rules and of the path search, also");
+			err("         exposed through JMX (interoperability_script:type=RuleMetrics) during the run");
+			err("<limits> - comma-separated limits of the path search: hops=<n> (hops of a path), states=<n> (states");
+			err("           expanded per Communication Need), cn=<ms> (time per Communication Need), run=<ms> (time of the");
+			err("           run). Communication Needs that run out are reported inconclusive");
+			err("--watch - after the evaluation, evaluate the model again each time it is saved, only for the Communication");
+			err("          Needs that the changes affect, until interrupted");
+			err("<file>[,<entries>] - cache of the results of the Communication Needs, reused across runs for those whose");
+			err("           neighbourhood in the model is unchanged, with at most <entries> results (default 10000)");
 			err("<dir> - path to output folder in which to save the UML profile");
 			return false;
 		}
-		outputDir = new File(args[0]).getCanonicalFile();
+		outputDir = new File(args[arg]).getCanonicalFile();
 		if (!outputDir.exists()) 
 		{
 			err("No such directory: %s", outputDir.getAbsolutePath());
@@ -1117,11 +4333,36 @@ public class interoperability
 		}
 		return true;
 	}
+	
+	// Model files of --batch: the .uml files of a directory, or the files matching a glob in its last segment
+	private static List<File> listModels(String models)
+	{
+		File file = new File(models).getAbsoluteFile();
+		File directory = file.isDirectory() ? file : file.getParentFile();
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + (file.isDirectory() ? "*." + UMLResource.FILE_EXTENSION : file.getName()));
+		List<File> modelList = new ArrayList<File>();
+		File[] files = directory != null ? directory.listFiles() : null;
+		if (files != null)
+		{
+			for (File model : files)
+			{
+				if (model.isFile() && matcher.matches(model.toPath().getFileName()))
+				{
+					modelList.add(model);
+				}
+			}
+		}
+		Collections.sort(modelList);
+		return modelList;
+	}
 
+	// Saves a copy of the resource of package_ to uri. The resource keeps its URI, so that it is still the
+	// one of the model loaded (see watch())
 	protected static void save(org.eclipse.uml2.uml.Package package_, URI uri) 
 	{
 		// Modified by PabloAG
 		Resource resource = package_.eResource();
+		URI source = resource.getURI();
 		resource.setURI(uri);
 		try 
 		{
@@ -1131,6 +4372,19 @@ public class interoperability
 		{
 			err(ioe.getMessage());
 		}
+		finally
+		{
+			resource.setURI(source);
+		}
+	}
+	
+	// Empty resource for a model built in memory. For the benchmarks' ModelGenerator
+	protected static Resource createResource(URI uri)
+	{
+		synchronized (RESOURCE_SET)
+		{
+			return RESOURCE_SET.createResource(uri);
+		}
 	}
 	
 	protected static org.eclipse.uml2.uml.Package load(URI uri) 
@@ -1147,6 +4401,10 @@ public class interoperability
 		catch (WrappedException we) 
 		{
 			err(we.getMessage());
+			if (log != null)
+			{
+				log.close();
+			}
 			System.exit(1);
 		}
 		return package_;
@@ -1159,54 +4417,61 @@ public class interoperability
 
 	protected static void banner(String format, Object... args) 
 	{
-		System.out.println();
+		out("");
 		hrule();
-		System.out.printf(format, args);
-		if (!format.endsWith("%n")) 
-		{
-			System.out.println();
-		}
+		out(format, args);
 		hrule();
-		System.out.println();
-		
-		writer.println();
-		writer.println("------------------------------------");
-		writer.printf(format, args);
-		if (!format.endsWith("%n")) 
-		{
-			writer.println();
-		}
-		writer.println("------------------------------------");
-		writer.println();
+		out("");
 	}
 
 	protected static void hrule() 
 	{
-		System.out.println("------------------------------------");
+		out("------------------------------------");
 	}
 
 	protected static void out(String format, Object... args)
 	{
-		if (DEBUG) 
+		out(Category.GENERAL, format, args);
+	}
+
+	// Logs the message if its category is enabled. During an evaluation it is kept in the Evaluation until
+	// it is merged. The arguments are built by the caller, so callers that log often check the category first
+	protected static void out(Category category, String format, Object... args)
+	{
+		if (!LogSink.isEnabled(category, Level.INFO))
 		{
-			System.out.printf(format, args);
-			writer.printf(format, args);
-			if (!format.endsWith("%n")) 
-			{
-				System.out.println();
-				writer.println();
-			}
+			return;
+		}
+		LogSink.Message message = new LogSink.Message(Level.INFO, format, args);
+		Evaluation e = evaluation.get();
+		if (e != null)
+		{
+			e.output.add(message);
+		}
+		else
+		{
+			write(message);
 		}
 	}
 
 	protected static void err(String format, Object... args) 
 	{
-		System.err.printf(format, args);
-		writer.printf(format, args);
-		if (!format.endsWith("%n")) 
+		if (LogSink.isEnabled(Category.GENERAL, Level.ERROR))
+		{
+			write(new LogSink.Message(Level.ERROR, format, args));
+		}
+	}
+
+	// Writes through the log sink once it has been started, directly otherwise
+	private static void write(LogSink.Message message)
+	{
+		if (log != null)
+		{
+			log.add(message);
+		}
+		else
 		{
-			System.err.println();
-			writer.println();
+			message.writeTo(true, writer);
 		}
 	}
-}
\ No newline at end of file
+}